@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.os.Handler;
+import android.os.Message;
+
+import com.hoccer.api.ClientConfig;
+import com.hoccer.api.android.AndroidClientConfig;
+import com.hoccer.api.android.AsyncLinccer;
+
+/**
+ * Overhead of {@link AsyncLinccer#asyncShare(String, JSONObject, Handler)} and
+ * {@link AsyncLinccer#asyncReceive(String, Handler)} around the server call: thread start,
+ * message creation, tracing, metrics and handler dispatch. share and receive return immediately.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DispatchBenchmark {
+
+    private static final String MODE = "one-to-one";
+
+    private AsyncLinccer        mLinccer;
+    private JSONObject          mPayload;
+
+    @Setup
+    public void setUp() throws Exception {
+        mLinccer = new ImmediateLinccer(new AndroidClientConfig("Benchmark"));
+        mPayload = new JSONObject("{ 'demo' : 'arbitrary json' }");
+    }
+
+    @Benchmark
+    public Object asyncShare() throws InterruptedException {
+        CompletionHandler handler = new CompletionHandler();
+        mLinccer.asyncShare(MODE, mPayload, handler);
+        return handler.await();
+    }
+
+    @Benchmark
+    public Object asyncReceive() throws InterruptedException {
+        CompletionHandler handler = new CompletionHandler();
+        mLinccer.asyncReceive(MODE, handler);
+        return handler.await();
+    }
+
+    private static class ImmediateLinccer extends AsyncLinccer {
+
+        private final JSONObject mResult = new JSONObject();
+
+        ImmediateLinccer(ClientConfig config) {
+            super(config);
+        }
+
+        @Override
+        public JSONObject share(String mode, JSONObject payload) {
+            return mResult;
+        }
+
+        @Override
+        public JSONObject receive(String mode) {
+            return mResult;
+        }
+    }
+
+    private static class CompletionHandler extends Handler {
+
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private volatile Message     mResult;
+
+        @Override
+        public void handleMessage(Message msg) {
+            if (msg.what != AsyncLinccer.MessageType.SEARCHING) {
+                mResult = msg;
+                mDone.countDown();
+            }
+        }
+
+        Message await() throws InterruptedException {
+            mDone.await();
+            return mResult;
+        }
+    }
+}
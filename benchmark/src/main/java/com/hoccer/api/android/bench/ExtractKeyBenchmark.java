@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android.bench;
+
+import java.io.File;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.content.Context;
+
+import com.hoccer.api.android.AsyncLinccer;
+import com.hoccer.data.Base64;
+import com.hoccer.data.CryptoHelper;
+
+/**
+ * {@link AsyncLinccer#extractKey(Context, JSONObject)}: client ID hashing with SHA-1, private key
+ * decoding from the preferences and RSA decryption of the shared key phrase.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExtractKeyBenchmark {
+
+    private Context    mContext;
+    private JSONObject mPassword;
+
+    @Setup
+    public void setUp() throws Exception {
+        mContext = new Context(new File(System.getProperty("java.io.tmpdir")));
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        // the preferences hold the PKCS#1 key, extractKey wraps it into PKCS#8 again
+        AsyncLinccer.setInSharedPreferences(mContext, AsyncLinccer.PREF_PRIVATE_KEY,
+                Base64.encodeBytes(unwrapPkcs8(keyPair.getPrivate().getEncoded())));
+
+        Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+        byte[] cryptedKey = cipher.doFinal(CryptoHelper.makeRandomBytes(16));
+
+        String clientId = AsyncLinccer.getClientIdFromSharedPreferences(mContext);
+        String clientIdHash = CryptoHelper.toHex(CryptoHelper.md_sha1(clientId.getBytes()));
+        mPassword = new JSONObject();
+        mPassword.put(clientIdHash, Base64.encodeBytes(cryptedKey));
+    }
+
+    @Benchmark
+    public byte[] extractKey() throws Exception {
+        return AsyncLinccer.extractKey(mContext, mPassword);
+    }
+
+    /**
+     * @return the PKCS#1 RSAPrivateKey contained in the octet string of a PKCS#8 PrivateKeyInfo
+     */
+    private static byte[] unwrapPkcs8(byte[] pkcs8) {
+        int pos = skipHeader(pkcs8, 0); // PrivateKeyInfo sequence
+        pos = skipElement(pkcs8, pos); // version
+        pos = skipElement(pkcs8, pos); // algorithm identifier
+        int contentStart = skipHeader(pkcs8, pos); // private key octet string
+        return Arrays.copyOfRange(pkcs8, contentStart, contentStart
+                + contentLength(pkcs8, pos));
+    }
+
+    private static int skipHeader(byte[] der, int pos) {
+        int lengthByte = der[pos + 1] & 0xff;
+        return pos + 2 + (lengthByte < 0x80 ? 0 : lengthByte & 0x7f);
+    }
+
+    private static int skipElement(byte[] der, int pos) {
+        return skipHeader(der, pos) + contentLength(der, pos);
+    }
+
+    private static int contentLength(byte[] der, int pos) {
+        int lengthByte = der[pos + 1] & 0xff;
+        if (lengthByte < 0x80) {
+            return lengthByte;
+        }
+        int length = 0;
+        for (int i = 0; i < (lengthByte & 0x7f); i++) {
+            length = length << 8 | der[pos + 2 + i] & 0xff;
+        }
+        return length;
+    }
+}
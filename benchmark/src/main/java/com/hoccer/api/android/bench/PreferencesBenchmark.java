@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.content.Context;
+
+import com.hoccer.api.android.AndroidClientConfig;
+import com.hoccer.api.android.AsyncLinccer;
+
+/**
+ * The SharedPreferences helpers of {@link AsyncLinccer} and {@link AndroidClientConfig} with
+ * already populated preferences, i.e. the steady state after the first app start. The in-memory
+ * preferences stand-in makes this the cost of the helpers themselves, not of Android's XML backed
+ * storage. The first start, which generates the client id, is measured by {@link StartupBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PreferencesBenchmark {
+
+    private Context mContext;
+
+    @Setup
+    public void setUp() {
+        mContext = new Context(new File(System.getProperty("java.io.tmpdir")));
+
+        // populate defaults like on a second app start
+        AsyncLinccer.getClientIdFromSharedPreferences(mContext);
+        AsyncLinccer.getEncryptionKeyFromSharedPreferences(mContext);
+        AsyncLinccer.getUserNameFromSharedPreferences(mContext);
+        AndroidClientConfig.getServerNameFromSharedPreferences(mContext);
+    }
+
+    @Benchmark
+    public String getClientId() {
+        return AsyncLinccer.getClientIdFromSharedPreferences(mContext);
+    }
+
+    @Benchmark
+    public String getEncryptionKey() {
+        return AsyncLinccer.getEncryptionKeyFromSharedPreferences(mContext);
+    }
+
+    @Benchmark
+    public String getUserName() {
+        return AsyncLinccer.getUserNameFromSharedPreferences(mContext);
+    }
+
+    @Benchmark
+    public boolean getFlag() {
+        return AsyncLinccer.getFlagFromSharedPreferences(mContext, AsyncLinccer.PREF_USE_ENCRYPTION,
+                false);
+    }
+
+    @Benchmark
+    public String getServerName() {
+        return AndroidClientConfig.getServerNameFromSharedPreferences(mContext);
+    }
+}
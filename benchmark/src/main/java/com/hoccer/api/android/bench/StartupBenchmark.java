@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android.bench;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.content.Context;
+import android.location.LocationManager;
+import android.net.wifi.WifiManager;
+
+import com.hoccer.api.android.AndroidClientConfig;
+import com.hoccer.api.android.AsyncLinccer;
+import com.hoccer.api.android.BackgroundInitializer;
+import com.hoccer.api.android.LinccLocationManager;
+
+/**
+ * What each part of the binding costs on the first app start. Every invocation gets a fresh context
+ * with empty preferences and is timed once without warmup, so the first iterations of each fork
+ * include class loading and interpreted execution like a cold start on a device. The stand-ins
+ * make this the cost of the binding itself, not of Android's system service lookups.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 20)
+@Fork(5)
+public class StartupBenchmark {
+
+    private Context mContext;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        mContext = new Context(new File(System.getProperty("java.io.tmpdir")));
+        mContext.putSystemService(Context.LOCATION_SERVICE, new LocationManager(
+                LocationManager.NETWORK_PROVIDER, LocationManager.GPS_PROVIDER));
+        mContext.putSystemService(Context.WIFI_SERVICE, new WifiManager());
+    }
+
+    @Benchmark
+    public String clientId() {
+        return AsyncLinccer.getClientIdFromSharedPreferences(mContext);
+    }
+
+    @Benchmark
+    public String userName() {
+        return AsyncLinccer.getUserNameFromSharedPreferences(mContext);
+    }
+
+    @Benchmark
+    public AsyncLinccer linccer() {
+        return new AsyncLinccer(new AndroidClientConfig("Benchmark"));
+    }
+
+    /** The part of the location manager paid on the main thread */
+    @Benchmark
+    public LinccLocationManager locationManager() {
+        return new LinccLocationManager(mContext, null, null);
+    }
+
+    /** The deferred part, paid by the first location update or the background initializer */
+    @Benchmark
+    public LinccLocationManager locationManagerInitialized() {
+        LinccLocationManager locationManager = new LinccLocationManager(mContext, null, null);
+        locationManager.initialize();
+        return locationManager;
+    }
+
+    @Benchmark
+    public Map<String, Long> backgroundInitializer() throws InterruptedException {
+        BackgroundInitializer initializer = BackgroundInitializer.start(mContext,
+                new LinccLocationManager(mContext, null, null));
+        initializer.await(10000);
+        return initializer.getTrace();
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import com.hoccer.api.android.AndroidStreamableContent;
+import com.hoccer.api.android.BadContentResolverUriException;
+
+/**
+ * Stream length and content type lookups of {@link AndroidStreamableContent}, which are queried
+ * repeatedly while a filecache transfer is set up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StreamableContentBenchmark {
+
+    private static final Uri         CONTENT_URI = Uri.parse("content://media/external/images/1");
+
+    private AndroidStreamableContent mContent;
+
+    @Setup
+    public void setUp() throws BadContentResolverUriException {
+        ContentResolver resolver = new ContentResolver();
+        resolver.putContent(CONTENT_URI, "image/jpeg", new byte[64 * 1024]);
+        mContent = new UriContent(resolver, CONTENT_URI);
+    }
+
+    @Benchmark
+    public long getNewStreamLength() throws Exception {
+        return mContent.getNewStreamLength();
+    }
+
+    @Benchmark
+    public long getRawStreamLength() throws Exception {
+        return mContent.getRawStreamLength();
+    }
+
+    @Benchmark
+    public String getContentType() {
+        return mContent.getContentType();
+    }
+
+    private static class UriContent extends AndroidStreamableContent {
+
+        UriContent(ContentResolver resolver, Uri uri) throws BadContentResolverUriException {
+            super(resolver);
+            setDataUri(uri);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.net.wifi.ScanResult;
+
+import com.hoccer.api.android.AndroidClientConfig;
+import com.hoccer.api.android.AsyncLinccer;
+
+/**
+ * Conversion of Wi-Fi scan results into the BSSID list of the environment. Automatic environment
+ * submission is disabled, so no network I/O is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WifiScanBenchmark {
+
+    @Param({ "1", "10", "50" })
+    public int               scanResultCount;
+
+    private AsyncLinccer     mLinccer;
+    private List<ScanResult> mScanResults;
+
+    @Setup
+    public void setUp() {
+        mLinccer = new AsyncLinccer(new AndroidClientConfig("Benchmark"));
+        mLinccer.autoSubmitEnvironmentChanges(false);
+
+        mScanResults = new ArrayList<ScanResult>(scanResultCount);
+        for (int i = 0; i < scanResultCount; i++) {
+            ScanResult scan = new ScanResult();
+            scan.BSSID = String.format("00:1f:3f:%02x:%02x:%02x", i >> 16 & 0xff, i >> 8 & 0xff,
+                    i & 0xff);
+            scan.SSID = "network" + i;
+            scan.level = -40 - i % 50;
+            mScanResults.add(scan);
+        }
+    }
+
+    @Benchmark
+    public AsyncLinccer onWifiScanResults() throws Exception {
+        mLinccer.onWifiScanResults(mScanResults);
+        return mLinccer;
+    }
+}
@@ -0,0 +1,521 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android.bench.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.wifi.ScanResult;
+import android.os.Handler;
+import android.os.Message;
+
+import com.hoccer.api.android.AndroidClientConfig;
+import com.hoccer.api.android.AsyncLinccer;
+import com.hoccer.api.android.AsyncLinccer.MessageType;
+import com.hoccer.api.android.FileCacheService;
+import com.hoccer.api.android.HttpConnectionPool;
+import com.hoccer.api.android.LatencyHistogram;
+import com.hoccer.data.GenericStreamableContent;
+
+/**
+ * Simulates many concurrent clients against a {@link LocalLinccerServer} and reports throughput
+ * and latency percentiles. Every client is an {@link AsyncLinccer} and, if files are transferred,
+ * a {@link FileCacheService} of its own, configured with the server's URIs, so the numbers include
+ * the client side of the Android API. Clients work in pairs sharing a Wi-Fi environment: each
+ * round one of them (optionally) stores a file in the filecache and shares its URI, while the
+ * other receives and then fetches the file. Filecache transfers run without response handlers
+ * and are awaited through {@link FileCacheService#setTransferListener}.
+ * 
+ * <pre>
+ * java -cp target/benchmarks.jar com.hoccer.api.android.bench.server.LoadDriver \
+ *      clients=2000 rounds=5 mode=one-to-one latency=80 bandwidth=250000 loss=0.01 \
+ *      collisions=0.02 window=1000 filesize=65536 pool=true
+ * </pre>
+ * 
+ * Without a url argument an embedded server is started with the given conditions. With pool=true
+ * every client sends its requests through a {@link HttpConnectionPool} of its own.
+ */
+public class LoadDriver {
+
+    // Constants ---------------------------------------------------------
+
+    private static final String SHARE            = "share";
+    private static final String RECEIVE          = "receive";
+    private static final String ENVIRONMENT      = "environment";
+    private static final String STORE            = "store";
+    private static final String FETCH            = "fetch";
+
+    /** Payload key of the stored file's URI */
+    private static final String KEY_FILE         = "file";
+
+    private static final int    EXPIRES_IN       = 60;
+
+    // Instance Fields ---------------------------------------------------
+
+    private final String   mLinccerUri;
+    private final String   mFileCacheUri;
+    private final String   mMode;
+    private final int      mRounds;
+    private final byte[]   mFile;
+    private final boolean  mPooled;
+
+    private final ConcurrentHashMap<String, LatencyHistogram> mLatencies =
+            new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentHashMap<String, AtomicLong>       mStatuses =
+            new ConcurrentHashMap<String, AtomicLong>();
+
+    // Constructors ------------------------------------------------------
+
+    public LoadDriver(String linccerUri, String fileCacheUri, String mode, int rounds,
+            int fileSize, boolean pooled) {
+
+        mLinccerUri = linccerUri;
+        mFileCacheUri = fileCacheUri;
+        mMode = mode;
+        mRounds = rounds;
+        mFile = fileSize > 0 ? new byte[fileSize] : null;
+        mPooled = pooled;
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    /**
+     * Runs the given number of clients (rounded up to pairs) to completion.
+     * 
+     * @return the wall clock duration in milliseconds
+     */
+    public long run(int clients) throws InterruptedException {
+
+        int pairs = (clients + 1) / 2;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(pairs * 2);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < pairs; i++) {
+            final String bssid = String.format("02:00:%02x:%02x:%02x:%02x", i >> 24 & 0xff,
+                    i >> 16 & 0xff, i >> 8 & 0xff, i & 0xff);
+            for (int role = 0; role < 2; role++) {
+                final boolean isSender = role == 0;
+                threads.add(new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            start.await();
+                            runClient(UUID.randomUUID(), bssid, isSender);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }, "client-" + i + (isSender ? "s" : "r")));
+            }
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long startMillis = System.currentTimeMillis();
+        start.countDown();
+        done.await();
+        return System.currentTimeMillis() - startMillis;
+    }
+
+    public void printReport(long durationMillis, PrintStream out) {
+
+        long operations = 0;
+        Map<String, LatencyHistogram> sorted = new TreeMap<String, LatencyHistogram>(mLatencies);
+        out.println(String.format("%-12s %8s %10s %10s %10s %10s", "operation", "count", "p50 ms",
+                "p90 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, LatencyHistogram> entry : sorted.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            operations += snapshot.getCount();
+            out.println(String.format("%-12s %8d %10.1f %10.1f %10.1f %10.1f", entry.getKey(),
+                    snapshot.getCount(), snapshot.getPercentile(50) / 1000.0,
+                    snapshot.getPercentile(90) / 1000.0, snapshot.getPercentile(99) / 1000.0,
+                    snapshot.getMax() / 1000.0));
+        }
+        out.println("");
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<String, AtomicLong>(mStatuses)
+                .entrySet()) {
+            out.println(String.format("%-20s %8d", entry.getKey(), entry.getValue().get()));
+        }
+        out.println("");
+        out.println(String.format("%d operations in %.1f s, %.1f ops/s", operations,
+                durationMillis / 1000.0, operations * 1000.0 / Math.max(1, durationMillis)));
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private void runClient(UUID clientId, String bssid, boolean isSender)
+            throws InterruptedException {
+
+        Context context = new Context(new File(System.getProperty("java.io.tmpdir")));
+
+        AndroidClientConfig config = new AndroidClientConfig("LoadDriver", clientId, "client "
+                + clientId);
+        config.setLinccerServer(mLinccerUri);
+        config.setFileCacheServer(mFileCacheUri);
+        HttpConnectionPool pool = null;
+        if (mPooled) {
+            pool = new HttpConnectionPool(context);
+            config.setConnectionPool(pool);
+        }
+
+        AsyncLinccer linccer = new AsyncLinccer(config);
+        linccer.setAutoSubmitEnvironment(false);
+
+        FileCacheService fileCache = null;
+        Transfers transfers = new Transfers();
+        if (mFile != null) {
+            fileCache = new FileCacheService();
+            fileCache.putSystemService(Context.CONNECTIVITY_SERVICE, new ConnectivityManager());
+            fileCache.onCreate();
+            fileCache.init(config);
+            fileCache.setTransferListener(transfers);
+        }
+
+        try {
+            submitEnvironment(linccer, bssid);
+
+            for (int round = 0; round < mRounds; round++) {
+                if (isSender) {
+                    JSONObject payload = new JSONObject();
+                    payload.put("round", round);
+                    if (fileCache != null) {
+                        String uri = store(fileCache, transfers);
+                        if (uri != null) {
+                            payload.put(KEY_FILE, uri);
+                        }
+                    }
+                    transfer(SHARE, linccer, payload);
+                } else {
+                    Message msg = transfer(RECEIVE, linccer, null);
+                    if (fileCache != null && msg.what == MessageType.RECEIVED) {
+                        String uri = ((JSONObject) msg.obj).optString(KEY_FILE, null);
+                        if (uri != null) {
+                            fetch(fileCache, transfers, uri);
+                        }
+                    }
+                }
+            }
+
+        } catch (JSONException e) {
+            counter("payload " + e.getClass().getSimpleName()).incrementAndGet();
+        } finally {
+            if (fileCache != null) {
+                fileCache.onDestroy();
+            }
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private void submitEnvironment(AsyncLinccer linccer, String bssid) {
+
+        ScanResult scan = new ScanResult();
+        scan.BSSID = bssid;
+
+        long start = System.nanoTime();
+        String status = "ok";
+        try {
+            linccer.onWifiScanResults(Collections.singletonList(scan));
+            linccer.submitCurrentEnvironment();
+        } catch (Exception e) {
+            status = e.getClass().getSimpleName();
+        }
+        record(ENVIRONMENT, start, status);
+    }
+
+    /**
+     * Shares the payload or, if it is null, receives through the linccer's async API.
+     * 
+     * @return the final message
+     */
+    private Message transfer(String operation, AsyncLinccer linccer, JSONObject payload)
+            throws InterruptedException {
+
+        ResultHandler handler = new ResultHandler();
+        long start = System.nanoTime();
+        if (payload != null) {
+            linccer.asyncShare(mMode, payload, handler);
+        } else {
+            linccer.asyncReceive(mMode, handler);
+        }
+        Message msg = handler.await();
+
+        String status = String.valueOf(msg.what);
+        if (msg.obj instanceof Throwable) {
+            status += " " + msg.obj.getClass().getSimpleName();
+        }
+        record(operation, start, status);
+        return msg;
+    }
+
+    /**
+     * @return the URI of the stored file or null if storing failed
+     */
+    private String store(FileCacheService fileCache, Transfers transfers)
+            throws InterruptedException {
+
+        long start = System.nanoTime();
+        String uri = null;
+        String status;
+        try {
+            uri = fileCache.store(new BytesContent(mFile), EXPIRES_IN, null);
+            status = transfers.await(uri) ? "ok" : "failed";
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            status = e.getClass().getSimpleName();
+        }
+        record(STORE, start, status);
+        return "ok".equals(status) ? uri : null;
+    }
+
+    private void fetch(FileCacheService fileCache, Transfers transfers, String uri)
+            throws InterruptedException {
+
+        BytesContent sink = new BytesContent(null);
+        long start = System.nanoTime();
+        fileCache.fetch(uri, sink, null);
+        String status = "failed";
+        if (transfers.await(uri)) {
+            status = sink.getLength() == mFile.length ? "ok" : "truncated";
+        }
+        record(FETCH, start, status);
+    }
+
+    private void record(String operation, long startNanos, String status) {
+
+        histogram(operation).record((System.nanoTime() - startNanos) / 1000);
+        counter(operation + " " + status).incrementAndGet();
+    }
+
+    private LatencyHistogram histogram(String operation) {
+
+        LatencyHistogram histogram = mLatencies.get(operation);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = mLatencies.putIfAbsent(operation, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    private AtomicLong counter(String key) {
+
+        AtomicLong counter = mStatuses.get(key);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = mStatuses.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    // Main --------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> options = new TreeMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        int clients = Integer.parseInt(option(options, "clients", "1000"));
+        int rounds = Integer.parseInt(option(options, "rounds", "3"));
+        int fileSize = Integer.parseInt(option(options, "filesize", "0"));
+        String mode = option(options, "mode", "one-to-one");
+        boolean pooled = Boolean.parseBoolean(option(options, "pool", "false"));
+
+        LocalLinccerServer server = null;
+        String linccerUri = options.get("url");
+        String fileCacheUri = options.get("filecache");
+        if (linccerUri == null) {
+            ServerConditions conditions = new ServerConditions()
+                    .setLatency(Long.parseLong(option(options, "latency", "0")),
+                            Long.parseLong(option(options, "jitter", "0")))
+                    .setBandwidth(Long.parseLong(option(options, "bandwidth", "0")))
+                    .setPacketLoss(Double.parseDouble(option(options, "loss", "0")),
+                            Long.parseLong(option(options, "rto", "1000")))
+                    .setCollisionRate(Double.parseDouble(option(options, "collisions", "0")))
+                    .setMatchWindow(Long.parseLong(option(options, "window", "1000")));
+            server = new LocalLinccerServer(0, conditions);
+            server.start();
+            linccerUri = server.getLinccerUri();
+            fileCacheUri = server.getFileCacheUri();
+        }
+
+        LoadDriver driver = new LoadDriver(linccerUri, fileCacheUri, mode, rounds, fileSize,
+                pooled);
+        long duration = driver.run(clients);
+        driver.printReport(duration, System.out);
+
+        if (server != null) {
+            System.out.println(String.format("server: %d requests, %d matches, %d collisions",
+                    server.getRequestCount(), server.getMatchCount(), server.getCollisionCount()));
+            server.stop();
+        }
+    }
+
+    private static String option(Map<String, String> options, String key, String defaultValue) {
+
+        String value = options.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    // Inner Classes -----------------------------------------------------
+
+    /**
+     * Waits for the final message of an async share or receive.
+     */
+    private static class ResultHandler extends Handler {
+
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private volatile Message     mResult;
+
+        @Override
+        public void handleMessage(Message msg) {
+
+            if (msg.what != MessageType.SEARCHING) {
+                mResult = msg;
+                mDone.countDown();
+            }
+        }
+
+        Message await() throws InterruptedException {
+
+            mDone.await();
+            return mResult;
+        }
+    }
+
+    /**
+     * Collects the ends of a client's filecache transfers by URI. A store may finish before its
+     * URI is returned to the caller, so results are kept until they are awaited.
+     */
+    private static class Transfers implements FileCacheService.TransferListener {
+
+        private final Map<String, Boolean> mResults = new HashMap<String, Boolean>();
+
+        public synchronized void onTransferFinished(String uri, boolean success) {
+
+            mResults.put(uri, success);
+            notifyAll();
+        }
+
+        /**
+         * @return whether the transfer succeeded
+         */
+        synchronized boolean await(String uri) throws InterruptedException {
+
+            while (!mResults.containsKey(uri)) {
+                wait();
+            }
+            return mResults.remove(uri);
+        }
+    }
+
+    /**
+     * In-memory filecache content: the file to store, or a sink for a fetched one.
+     */
+    private static class BytesContent extends GenericStreamableContent {
+
+        private byte[] mData;
+
+        BytesContent(byte[] data) {
+
+            mData = data;
+            setContentType("application/octet-stream");
+            setFilename("load");
+        }
+
+        @Override
+        public InputStream openRawInputStream() throws IOException {
+
+            return new ByteArrayInputStream(mData);
+        }
+
+        @Override
+        public OutputStream openRawOutputStream() throws IOException {
+
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    mData = toByteArray();
+                }
+            };
+        }
+
+        @Override
+        public InputStream openNewInputStream() throws IOException {
+
+            return openRawInputStream();
+        }
+
+        @Override
+        public OutputStream openNewOutputStream() throws IOException {
+
+            return openRawOutputStream();
+        }
+
+        @Override
+        public long getRawStreamLength() throws IOException {
+
+            return getLength();
+        }
+
+        @Override
+        public long getNewStreamLength() throws IOException {
+
+            return getLength();
+        }
+
+        int getLength() {
+
+            return mData == null ? 0 : mData.length;
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android.bench.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embeddable stand-in for the Linccer and filecache servers, for load and latency tests without
+ * linccer.hoccer.com and filecache.hoccer.com. It implements the subset of the v3 protocol used by
+ * the Android API:
+ * 
+ * <ul>
+ * <li>PUT /v3/clients/{id}/environment - register the client's environment</li>
+ * <li>DELETE /v3/clients/{id}/environment - remove it</li>
+ * <li>PUT /v3/clients/{id}/action/{mode} - share the JSON body</li>
+ * <li>GET /v3/clients/{id}/action/{mode} - receive</li>
+ * <li>PUT /filecache/v3/{uuid}?expires_in=n - store the body</li>
+ * <li>GET /filecache/v3/{uuid} - fetch it</li>
+ * </ul>
+ * 
+ * Clients are grouped by the first BSSID of their environment or, without Wi-Fi, by their
+ * location rounded to about 100 m. Shares and receives of a group and mode that arrive within the
+ * match window are matched when the window closes: 200 with the shared payloads on success, 204
+ * if there was no counterpart and 409 on collisions (more than one sender, or more than one
+ * receiver in one-to-one mode). Latency, bandwidth, packet loss and collisions are injected as
+ * configured in {@link ServerConditions}.
+ */
+public class LocalLinccerServer {
+
+    // Constants ---------------------------------------------------------
+
+    private static final String LINCCER_PATH   = "/v3/clients/";
+    private static final String FILECACHE_PATH = "/filecache/v3/";
+
+    private static final String ONE_TO_ONE     = "one-to-one";
+
+    private static final int    CHUNK_SIZE     = 4096;
+
+    // Instance Fields ---------------------------------------------------
+
+    private final ServerConditions mConditions;
+    private final HttpServer       mServer;
+    private final ExecutorService  mExecutor;
+
+    /** Group keys of registered clients by client ID */
+    private final ConcurrentHashMap<String, String> mGroups =
+            new ConcurrentHashMap<String, String>();
+
+    /** Open match rounds by group key and mode */
+    private final Map<String, Round> mRounds = new HashMap<String, Round>();
+
+    private final ConcurrentHashMap<String, StoredFile> mFiles =
+            new ConcurrentHashMap<String, StoredFile>();
+
+    private final AtomicLong       mRequests   = new AtomicLong();
+    private final AtomicLong       mMatches    = new AtomicLong();
+    private final AtomicLong       mCollisions = new AtomicLong();
+
+    // Constructors ------------------------------------------------------
+
+    /**
+     * @param port
+     *            the port to listen on, 0 picks a free one
+     */
+    public LocalLinccerServer(int port, ServerConditions conditions) throws IOException {
+
+        mConditions = conditions;
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+
+        mServer.createContext(LINCCER_PATH, new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handleLinccer(exchange);
+            }
+        });
+        mServer.createContext(FILECACHE_PATH, new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handleFileCache(exchange);
+            }
+        });
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    public void start() {
+
+        mServer.start();
+    }
+
+    public void stop() {
+
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    public String getLinccerUri() {
+
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/v3";
+    }
+
+    public String getFileCacheUri() {
+
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/filecache/v3";
+    }
+
+    public ServerConditions getConditions() {
+
+        return mConditions;
+    }
+
+    public long getRequestCount() {
+
+        return mRequests.get();
+    }
+
+    public long getMatchCount() {
+
+        return mMatches.get();
+    }
+
+    public long getCollisionCount() {
+
+        return mCollisions.get();
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private void handleLinccer(HttpExchange exchange) throws IOException {
+
+        try {
+            byte[] body = readBody(exchange);
+            delay();
+
+            // {id}/environment or {id}/action/{mode}
+            String[] path = exchange.getRequestURI().getPath().substring(LINCCER_PATH.length())
+                    .split("/");
+            String method = exchange.getRequestMethod();
+
+            if (path.length == 2 && "environment".equals(path[1])) {
+
+                if ("DELETE".equals(method)) {
+                    mGroups.remove(path[0]);
+                } else {
+                    mGroups.put(path[0], groupKeyOf(new JSONObject(new String(body, "UTF-8"))));
+                }
+                respond(exchange, 201, null);
+
+            } else if (path.length == 3 && "action".equals(path[1])) {
+
+                boolean isShare = "PUT".equals(method) || "POST".equals(method);
+                String payload = isShare ? new String(body, "UTF-8") : null;
+                Round.Result result = join(path[0], path[2], isShare, payload);
+                respond(exchange, result.mStatus, result.mBody);
+
+            } else {
+                respond(exchange, 404, null);
+            }
+
+        } catch (JSONException e) {
+            respond(exchange, 400, null);
+        } catch (InterruptedException e) {
+            respond(exchange, 503, null);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleFileCache(HttpExchange exchange) throws IOException {
+
+        try {
+            byte[] body = readBody(exchange);
+            delay();
+
+            String id = exchange.getRequestURI().getPath().substring(FILECACHE_PATH.length());
+            String method = exchange.getRequestMethod();
+
+            if ("PUT".equals(method) || "POST".equals(method)) {
+
+                String type = exchange.getRequestHeaders().getFirst("Content-Type");
+                mFiles.put(id, new StoredFile(body, type));
+                respond(exchange, 201, null);
+
+            } else if ("GET".equals(method)) {
+
+                StoredFile file = mFiles.get(id);
+                if (file == null) {
+                    respond(exchange, 404, null);
+                } else {
+                    if (file.mContentType != null) {
+                        exchange.getResponseHeaders().set("Content-Type", file.mContentType);
+                    }
+                    respond(exchange, 200, file.mContent);
+                }
+
+            } else {
+                respond(exchange, 405, null);
+            }
+
+        } catch (InterruptedException e) {
+            respond(exchange, 503, null);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Round.Result join(String clientId, String mode, boolean isShare, String payload)
+            throws InterruptedException {
+
+        String group = mGroups.get(clientId);
+        if (group == null) {
+            return new Round.Result(412, null);
+        }
+
+        String key = group + " " + mode;
+        Round round;
+        boolean opened = false;
+        synchronized (mRounds) {
+            round = mRounds.get(key);
+            if (round == null) {
+                round = new Round(ONE_TO_ONE.equals(mode));
+                mRounds.put(key, round);
+                opened = true;
+            }
+            round.add(isShare, payload);
+        }
+
+        if (opened) {
+            Thread.sleep(mConditions.getMatchWindowMillis());
+            synchronized (mRounds) {
+                mRounds.remove(key);
+            }
+            round.close(mConditions.nextIsCollision());
+            if (round.isMatched()) {
+                mMatches.incrementAndGet();
+            } else if (round.isCollision()) {
+                mCollisions.incrementAndGet();
+            }
+        }
+
+        return round.await(isShare);
+    }
+
+    private String groupKeyOf(JSONObject environment) {
+
+        JSONObject wifi = environment.optJSONObject("wifi");
+        if (wifi != null) {
+            JSONArray bssids = wifi.optJSONArray("bssids");
+            if (bssids != null && bssids.length() > 0) {
+                return "wifi " + bssids.optString(0);
+            }
+        }
+
+        JSONObject location = environment.optJSONObject("gps");
+        if (location == null) {
+            location = environment.optJSONObject("network");
+        }
+        if (location != null) {
+            return "location " + Math.round(location.optDouble("latitude") * 1000) + ","
+                    + Math.round(location.optDouble("longitude") * 1000);
+        }
+        return "unknown";
+    }
+
+    private void delay() throws InterruptedException {
+
+        mRequests.incrementAndGet();
+        long delay = mConditions.nextDelayMillis();
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            throttle(read);
+        }
+        return body.toByteArray();
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+
+        if (body == null || body.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, body.length - offset);
+            out.write(body, offset, length);
+            throttle(length);
+        }
+        out.close();
+    }
+
+    private void throttle(int bytes) throws IOException {
+
+        long bytesPerSecond = mConditions.getBytesPerSecond();
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(bytes * 1000L / bytesPerSecond);
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while throttling");
+        }
+    }
+
+    // Inner Classes -----------------------------------------------------
+
+    private static class StoredFile {
+
+        private final byte[] mContent;
+        private final String mContentType;
+
+        StoredFile(byte[] content, String contentType) {
+            mContent = content;
+            mContentType = contentType;
+        }
+    }
+
+    /**
+     * The shares and receives of one group and mode that arrived within one match window.
+     */
+    private static class Round {
+
+        private final boolean        mOneToOne;
+        private final List<String>   mPayloads = new ArrayList<String>();
+        private int                  mReceivers;
+        private final CountDownLatch mClosed   = new CountDownLatch(1);
+        private volatile boolean     mForcedCollision;
+
+        Round(boolean oneToOne) {
+            mOneToOne = oneToOne;
+        }
+
+        synchronized void add(boolean isShare, String payload) {
+            if (isShare) {
+                mPayloads.add(payload);
+            } else {
+                mReceivers++;
+            }
+        }
+
+        void close(boolean forceCollision) {
+            mForcedCollision = forceCollision;
+            mClosed.countDown();
+        }
+
+        synchronized boolean isCollision() {
+            return mForcedCollision || mPayloads.size() > 1 || mOneToOne && mReceivers > 1;
+        }
+
+        synchronized boolean isMatched() {
+            return !isCollision() && mPayloads.size() == 1 && mReceivers > 0;
+        }
+
+        Result await(boolean isShare) throws InterruptedException {
+            mClosed.await();
+            synchronized (this) {
+                if (isCollision()) {
+                    return new Result(409, null);
+                }
+                if (!isMatched()) {
+                    return new Result(204, null);
+                }
+                return new Result(200, "[" + mPayloads.get(0) + "]");
+            }
+        }
+
+        static class Result {
+
+            final int    mStatus;
+            final byte[] mBody;
+
+            Result(int status, String body) {
+                mStatus = status;
+                byte[] bytes = null;
+                if (body != null) {
+                    try {
+                        bytes = body.getBytes("UTF-8");
+                    } catch (UnsupportedEncodingException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                mBody = bytes;
+            }
+        }
+    }
+
+    // Main --------------------------------------------------------------
+
+    /**
+     * Runs a server until the process is killed: [port] [latency ms] [bytes per second] [packet
+     * loss] [collision rate]
+     */
+    public static void main(String[] args) throws Exception {
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        ServerConditions conditions = new ServerConditions();
+        if (args.length > 1) {
+            conditions.setLatency(Long.parseLong(args[1]), Long.parseLong(args[1]) / 2);
+        }
+        if (args.length > 2) {
+            conditions.setBandwidth(Long.parseLong(args[2]));
+        }
+        if (args.length > 3) {
+            conditions.setPacketLoss(Double.parseDouble(args[3]), 1000);
+        }
+        if (args.length > 4) {
+            conditions.setCollisionRate(Double.parseDouble(args[4]));
+        }
+
+        LocalLinccerServer server = new LocalLinccerServer(port, conditions);
+        server.start();
+        System.out.println("linccer:   " + server.getLinccerUri());
+        System.out.println("filecache: " + server.getFileCacheUri());
+        new CountDownLatch(1).await(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+}
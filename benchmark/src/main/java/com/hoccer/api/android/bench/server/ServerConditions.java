@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android.bench.server;
+
+import java.util.Random;
+
+/**
+ * Network and server behaviour simulated by {@link LocalLinccerServer}. All values may be changed
+ * while the server is running.
+ */
+public class ServerConditions {
+
+    private final Random     mRandom = new Random();
+
+    private volatile long    mLatencyMillis;
+    private volatile long    mLatencyJitterMillis;
+    private volatile long    mBytesPerSecond;
+    private volatile double  mPacketLoss;
+    private volatile long    mRetransmitTimeoutMillis = 1000;
+    private volatile double  mCollisionRate;
+    private volatile long    mMatchWindowMillis       = 2000;
+
+    /**
+     * Delay added to every request, plus a uniformly distributed jitter of up to jitterMillis.
+     */
+    public ServerConditions setLatency(long millis, long jitterMillis) {
+        mLatencyMillis = millis;
+        mLatencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * Limits request and response bodies to the given throughput; 0 means unlimited.
+     */
+    public ServerConditions setBandwidth(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * With the given probability a request stalls for the retransmit timeout, like a TCP segment
+     * that has to be sent again.
+     */
+    public ServerConditions setPacketLoss(double probability, long retransmitTimeoutMillis) {
+        mPacketLoss = probability;
+        mRetransmitTimeoutMillis = retransmitTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * With the given probability a share or receive ends in a collision even if it was matched.
+     */
+    public ServerConditions setCollisionRate(double probability) {
+        mCollisionRate = probability;
+        return this;
+    }
+
+    /**
+     * How long share and receive requests wait for their counterparts.
+     */
+    public ServerConditions setMatchWindow(long millis) {
+        mMatchWindowMillis = millis;
+        return this;
+    }
+
+    public long getMatchWindowMillis() {
+        return mMatchWindowMillis;
+    }
+
+    public long getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    /**
+     * @return the delay to apply to the next request, including a possible retransmit
+     */
+    long nextDelayMillis() {
+        long delay = mLatencyMillis;
+        synchronized (mRandom) {
+            if (mLatencyJitterMillis > 0) {
+                delay += (long) (mRandom.nextDouble() * mLatencyJitterMillis);
+            }
+            if (mPacketLoss > 0 && mRandom.nextDouble() < mPacketLoss) {
+                delay += mRetransmitTimeoutMillis;
+            }
+        }
+        return delay;
+    }
+
+    boolean nextIsCollision() {
+        if (mCollisionRate <= 0) {
+            return false;
+        }
+        synchronized (mRandom) {
+            return mRandom.nextDouble() < mCollisionRate;
+        }
+    }
+}
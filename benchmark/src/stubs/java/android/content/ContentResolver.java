@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package android.content;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+
+/**
+ * JVM stand-in for Android's ContentResolver serving in-memory content registered by the
+ * benchmark.
+ */
+public class ContentResolver {
+
+    public static final String        SCHEME_CONTENT = "content";
+
+    private final Map<String, byte[]> mContents      = new HashMap<String, byte[]>();
+    private final Map<String, String> mTypes         = new HashMap<String, String>();
+
+    public synchronized void putContent(Uri uri, String type, byte[] content) {
+        mContents.put(uri.toString(), content);
+        mTypes.put(uri.toString(), type);
+    }
+
+    public synchronized String getType(Uri uri) {
+        return mTypes.get(uri.toString());
+    }
+
+    public InputStream openInputStream(Uri uri) throws FileNotFoundException {
+        return new ByteArrayInputStream(getContent(uri));
+    }
+
+    public OutputStream openOutputStream(Uri uri) throws FileNotFoundException {
+        getContent(uri);
+        return new ByteArrayOutputStream();
+    }
+
+    public AssetFileDescriptor openAssetFileDescriptor(Uri uri, String mode)
+            throws FileNotFoundException {
+        return new AssetFileDescriptor(getContent(uri).length);
+    }
+
+    private synchronized byte[] getContent(Uri uri) throws FileNotFoundException {
+        byte[] content = mContents.get(uri.toString());
+        if (content == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        return content;
+    }
+}
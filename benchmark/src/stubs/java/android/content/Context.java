@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package android.content;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * JVM stand-in for Android's Context. Shared preferences are kept in memory, system services are
+ * looked up from a map the benchmark fills in. Receivers are registered but no broadcasts are
+ * sent.
+ */
+public class Context {
+
+    public static final int    MODE_PRIVATE         = 0x0000;
+    public static final int    MODE_WORLD_READABLE  = 0x0001;
+    public static final int    MODE_WORLD_WRITEABLE = 0x0002;
+
+    public static final String LOCATION_SERVICE     = "location";
+    public static final String WIFI_SERVICE         = "wifi";
+    public static final String CONNECTIVITY_SERVICE = "connectivity";
+    public static final String TELEPHONY_SERVICE    = "phone";
+
+    private final Map<String, InMemoryPreferences> mPreferences =
+            new HashMap<String, InMemoryPreferences>();
+    private final Map<String, Object>              mServices    = new HashMap<String, Object>();
+    private final File                             mFilesDir;
+
+    private final List<BroadcastReceiver>          mReceivers   =
+            new CopyOnWriteArrayList<BroadcastReceiver>();
+    private final ContentResolver                  mResolver    = new ContentResolver();
+
+    public Context(File filesDir) {
+        mFilesDir = filesDir;
+    }
+
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        InMemoryPreferences prefs = mPreferences.get(name);
+        if (prefs == null) {
+            prefs = new InMemoryPreferences();
+            mPreferences.put(name, prefs);
+        }
+        return prefs;
+    }
+
+    public synchronized Object getSystemService(String name) {
+        return mServices.get(name);
+    }
+
+    public synchronized void putSystemService(String name, Object service) {
+        mServices.put(name, service);
+    }
+
+    public File getFilesDir() {
+        return mFilesDir;
+    }
+
+    public File getCacheDir() {
+        return mFilesDir;
+    }
+
+    public ContentResolver getContentResolver() {
+        return mResolver;
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        mReceivers.add(receiver);
+        return null;
+    }
+
+    public void unregisterReceiver(BroadcastReceiver receiver) {
+        if (!mReceivers.remove(receiver)) {
+            throw new IllegalArgumentException("Receiver not registered: " + receiver);
+        }
+    }
+
+    private static class InMemoryPreferences implements SharedPreferences {
+
+        private final Map<String, Object> mValues = new HashMap<String, Object>();
+
+        private final CopyOnWriteArrayList<OnSharedPreferenceChangeListener> mListeners =
+                new CopyOnWriteArrayList<OnSharedPreferenceChangeListener>();
+
+        public synchronized String getString(String key, String defValue) {
+            Object value = mValues.get(key);
+            return value == null ? defValue : (String) value;
+        }
+
+        public synchronized boolean getBoolean(String key, boolean defValue) {
+            Object value = mValues.get(key);
+            return value == null ? defValue : (Boolean) value;
+        }
+
+        public synchronized boolean contains(String key) {
+            return mValues.containsKey(key);
+        }
+
+        public Editor edit() {
+            return new InMemoryEditor();
+        }
+
+        public void registerOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+            mListeners.add(listener);
+        }
+
+        public void unregisterOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+            mListeners.remove(listener);
+        }
+
+        private class InMemoryEditor implements Editor {
+
+            private final Map<String, Object> mChanges = new HashMap<String, Object>();
+
+            public Editor putString(String key, String value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            public Editor putBoolean(String key, boolean value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            public Editor remove(String key) {
+                mChanges.put(key, null);
+                return this;
+            }
+
+            public boolean commit() {
+                synchronized (InMemoryPreferences.this) {
+                    for (Map.Entry<String, Object> change : mChanges.entrySet()) {
+                        if (change.getValue() == null) {
+                            mValues.remove(change.getKey());
+                        } else {
+                            mValues.put(change.getKey(), change.getValue());
+                        }
+                    }
+                }
+                for (String key : mChanges.keySet()) {
+                    for (OnSharedPreferenceChangeListener listener : mListeners) {
+                        listener.onSharedPreferenceChanged(InMemoryPreferences.this, key);
+                    }
+                }
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package android.location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.os.Looper;
+
+/**
+ * JVM stand-in for Android's LocationManager with a fixed set of providers. Listeners are
+ * registered but never called, there are no last known locations.
+ */
+public class LocationManager {
+
+    public static final String            NETWORK_PROVIDER = "network";
+    public static final String            GPS_PROVIDER     = "gps";
+
+    private final List<String>            mProviders;
+    private final List<LocationListener>  mListeners       =
+            new CopyOnWriteArrayList<LocationListener>();
+
+    public LocationManager(String... providers) {
+        mProviders = Arrays.asList(providers);
+    }
+
+    public List<String> getAllProviders() {
+        return new ArrayList<String>(mProviders);
+    }
+
+    public boolean isProviderEnabled(String provider) {
+        return mProviders.contains(provider);
+    }
+
+    public Location getLastKnownLocation(String provider) {
+        return null;
+    }
+
+    public void requestLocationUpdates(String provider, long minTime, float minDistance,
+            LocationListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void requestLocationUpdates(String provider, long minTime, float minDistance,
+            LocationListener listener, Looper looper) {
+        mListeners.add(listener);
+    }
+
+    public void removeUpdates(LocationListener listener) {
+        mListeners.remove(listener);
+    }
+}
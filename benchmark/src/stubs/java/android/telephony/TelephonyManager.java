@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package android.telephony;
+
+/**
+ * JVM stand-in for Android's TelephonyManager, only providing the network type constants.
+ */
+public class TelephonyManager {
+
+    public static final int NETWORK_TYPE_UNKNOWN = 0;
+    public static final int NETWORK_TYPE_GPRS    = 1;
+    public static final int NETWORK_TYPE_EDGE    = 2;
+    public static final int NETWORK_TYPE_UMTS    = 3;
+    public static final int NETWORK_TYPE_CDMA    = 4;
+    public static final int NETWORK_TYPE_EVDO_0  = 5;
+    public static final int NETWORK_TYPE_EVDO_A  = 6;
+    public static final int NETWORK_TYPE_1xRTT   = 7;
+    public static final int NETWORK_TYPE_HSDPA   = 8;
+    public static final int NETWORK_TYPE_HSUPA   = 9;
+    public static final int NETWORK_TYPE_HSPA    = 10;
+    public static final int NETWORK_TYPE_IDEN    = 11;
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package android.util;
+
+/**
+ * JVM stand-in for Android's logcat; discards all output so benchmarks measure the cost of the
+ * calling code only.
+ */
+public final class Log {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG   = 3;
+    public static final int INFO    = 4;
+    public static final int WARN    = 5;
+    public static final int ERROR   = 6;
+    public static final int ASSERT  = 7;
+
+    private Log() {
+    }
+
+    /** Like Android before API 24, rejects tags longer than 23 characters */
+    public static boolean isLoggable(String tag, int level) {
+        if (tag.length() > 23) {
+            throw new IllegalArgumentException("Log tag \"" + tag
+                    + "\" exceeds limit of 23 characters");
+        }
+        return level >= INFO;
+    }
+
+    public static int println(int priority, String tag, String msg) {
+        return msg == null ? 0 : msg.length();
+    }
+
+    public static int v(String tag, String msg) {
+        return println(VERBOSE, tag, msg);
+    }
+
+    public static int v(String tag, String msg, Throwable tr) {
+        return println(VERBOSE, tag, msg);
+    }
+
+    public static int d(String tag, String msg) {
+        return println(DEBUG, tag, msg);
+    }
+
+    public static int d(String tag, String msg, Throwable tr) {
+        return println(DEBUG, tag, msg);
+    }
+
+    public static int i(String tag, String msg) {
+        return println(INFO, tag, msg);
+    }
+
+    public static int i(String tag, String msg, Throwable tr) {
+        return println(INFO, tag, msg);
+    }
+
+    public static int w(String tag, String msg) {
+        return println(WARN, tag, msg);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println(WARN, tag, msg);
+    }
+
+    public static int e(String tag, String msg) {
+        return println(ERROR, tag, msg);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println(ERROR, tag, msg);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class JsonPullParserTest {
+
+    // Tests -------------------------------------------------------------
+
+    @Test
+    public void roundTripsWhatTheStreamWriterWrites() throws Exception {
+
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.beginObject();
+        writer.name("name").value("a \"quoted\"\nä name");
+        writer.name("count").value(Long.MIN_VALUE);
+        writer.name("ratio").value(-0.125);
+        writer.name("flag").value(true);
+        writer.name("none").nullValue();
+        writer.name("list").beginArray().value(0).value(1.5e-7).beginObject().endObject()
+                .endArray();
+        writer.endObject();
+        writer.close();
+
+        JsonPullParser parser = parse(out.toString());
+        assertEquals(JsonPullParser.BEGIN_OBJECT, parser.next());
+        JSONObject object = (JSONObject) parser.readValue();
+        assertEquals(JsonPullParser.END_DOCUMENT, parser.next());
+
+        assertEquals("a \"quoted\"\nä name", object.getString("name"));
+        assertEquals(Long.MIN_VALUE, object.getLong("count"));
+        assertEquals(-0.125, object.getDouble("ratio"), 0);
+        assertTrue(object.getBoolean("flag"));
+        assertTrue(object.isNull("none"));
+        JSONArray list = object.getJSONArray("list");
+        assertEquals(0L, list.get(0));
+        assertEquals(1.5e-7, list.getDouble(1), 0);
+        assertEquals(0, list.getJSONObject(2).length());
+    }
+
+    @Test
+    public void readsValidNumbers() throws Exception {
+
+        String[] numbers = { "0", "-0", "7", "-12", "0.5", "-0.5", "10.25", "1e3", "1E+3",
+                "2.5e-3", "-0e0" };
+        for (String number : numbers) {
+            JsonPullParser parser = parse("[" + number + "]");
+            parser.next();
+            assertEquals(number, JsonPullParser.NUMBER, parser.next());
+            assertEquals(number, parser.getText());
+            assertEquals(number, Double.parseDouble(number), parser.getDouble(), 0);
+            assertEquals(number, JsonPullParser.END_ARRAY, parser.next());
+        }
+    }
+
+    @Test
+    public void rejectsMalformedNumbers() throws Exception {
+
+        String[] documents = { "[1-2]", "[--1]", "[-]", "[1e]", "[1e+]", "[1.]", "[.5]",
+                "[-.5]", "[01]", "[1.5.5]", "[1e5e5]", "[+1]", "1-2", "1e", "-" };
+        for (String document : documents) {
+            try {
+                JsonPullParser parser = parse(document);
+                while (parser.next() != JsonPullParser.END_DOCUMENT) {
+                    if (parser.getToken() == JsonPullParser.NUMBER) {
+                        parser.readValue();
+                    }
+                }
+                fail("accepted " + document);
+            } catch (IOException e) {
+                // expected, and in particular no NumberFormatException
+            }
+        }
+    }
+
+    @Test
+    public void readsNumbersSplitAcrossBufferRefills() throws Exception {
+
+        // the parser reads 8192 chars at a time, let numbers straddle the boundaries
+        StringBuilder document = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            document.append(i == 0 ? "" : ",").append("-1234.5e-2");
+        }
+        document.append("]");
+
+        JsonPullParser parser = parse(document.toString());
+        parser.next();
+        int count = 0;
+        while (parser.next() == JsonPullParser.NUMBER) {
+            assertEquals(-12.345, parser.getDouble(), 1e-12);
+            count++;
+        }
+        assertEquals(5000, count);
+    }
+
+    @Test(expected = IOException.class)
+    public void reportsTruncatedDocuments() throws Exception {
+
+        JsonPullParser parser = parse("{\"a\": [1, 2");
+        parser.next();
+        parser.readValue();
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private JsonPullParser parse(String json) {
+
+        return new JsonPullParser(new StringReader(json));
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.Scanner;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.wifi.ScanResult;
+import android.os.Handler;
+import android.os.Message;
+
+import com.hoccer.api.android.AsyncLinccer.MessageType;
+import com.hoccer.api.android.bench.server.LocalLinccerServer;
+import com.hoccer.api.android.bench.server.ServerConditions;
+
+public class ShareOutboxTest {
+
+    // Constants ---------------------------------------------------------
+
+    private static final String MODE    = "one-to-one";
+
+    private static final long   TIMEOUT = 20 * 1000;
+
+    // Instance Fields ---------------------------------------------------
+
+    private File                mDir;
+    private Context             mContext;
+    private LocalLinccerServer  mServer;
+    private AndroidClientConfig mConfig;
+    private AsyncLinccer        mLinccer;
+
+    // Setup -------------------------------------------------------------
+
+    @Before
+    public void setUp() throws Exception {
+
+        mDir = File.createTempFile("outbox", "");
+        mDir.delete();
+        mDir.mkdirs();
+        mContext = new Context(mDir);
+        mContext.putSystemService(Context.CONNECTIVITY_SERVICE, new ConnectivityManager());
+
+        mServer = new LocalLinccerServer(0, new ServerConditions().setMatchWindow(200));
+        mServer.start();
+
+        UUID clientId = UUID.randomUUID();
+        mConfig = new AndroidClientConfig("ShareOutboxTest", clientId, "client " + clientId);
+        mConfig.setLinccerServer(mServer.getLinccerUri());
+        mLinccer = new AsyncLinccer(mConfig);
+    }
+
+    @After
+    public void tearDown() {
+
+        mServer.stop();
+        for (File file : mDir.listFiles()) {
+            file.delete();
+        }
+        mDir.delete();
+    }
+
+    // Tests -------------------------------------------------------------
+
+    @Test
+    public void retriesSharesFailingWithAnIOException() throws Exception {
+
+        submitEnvironment();
+        mConfig.setLinccerServer("http://127.0.0.1:" + unusedPort() + "/v3");
+
+        ResultHandler handler = new ResultHandler();
+        ShareOutbox outbox = new ShareOutbox(mContext, mLinccer, handler);
+        outbox.start();
+        int id = outbox.share(MODE, new JSONObject("{\"retried\": true}"));
+
+        // the first attempt is refused, the retry follows after at least MIN_BACKOFF / 2
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (getShareCount(MessageType.UNKNOWN_EXCEPTION) == 0) {
+            assertTrue("first attempt didn't fail", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        mConfig.setLinccerServer(mServer.getLinccerUri());
+
+        Message msg = handler.await();
+        outbox.stop();
+
+        assertEquals(MessageType.NOTHING_SHARED, msg.what);
+        assertEquals(id, msg.arg1);
+        assertEquals(1, getShareCount(MessageType.UNKNOWN_EXCEPTION));
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test
+    public void reportsClientErrorsWithoutRetrying() throws Exception {
+
+        // without an environment the server rejects the share
+        ResultHandler handler = new ResultHandler();
+        ShareOutbox outbox = new ShareOutbox(mContext, mLinccer, handler);
+        outbox.start();
+        int id = outbox.share(MODE, new JSONObject("{}"));
+
+        Message msg = handler.await();
+        outbox.stop();
+
+        assertEquals(MessageType.BAD_CLIENT_ACTION, msg.what);
+        assertEquals(id, msg.arg1);
+        assertEquals(1, getShareCount(MessageType.BAD_CLIENT_ACTION));
+    }
+
+    @Test
+    public void marksSharesFinishedAfterStopAsDone() throws Exception {
+
+        submitEnvironment();
+
+        final CountDownLatch searching = new CountDownLatch(1);
+        ResultHandler handler = new ResultHandler() {
+            @Override
+            public void handleMessage(Message msg) {
+
+                if (msg.what == MessageType.SEARCHING) {
+                    searching.countDown();
+                }
+                super.handleMessage(msg);
+            }
+        };
+        ShareOutbox outbox = new ShareOutbox(mContext, mLinccer, handler);
+        outbox.start();
+        int id = outbox.share(MODE, new JSONObject("{}"));
+
+        assertTrue(searching.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        outbox.stop();
+        assertEquals(MessageType.NOTHING_SHARED, handler.await().what);
+
+        assertTrue(readJournal().contains("done\t" + id + "\n"));
+        ShareOutbox restarted = new ShareOutbox(mContext, mLinccer, new ResultHandler());
+        restarted.start();
+        assertEquals(0, restarted.getPendingCount());
+        restarted.stop();
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private void submitEnvironment() throws Exception {
+
+        ScanResult scan = new ScanResult();
+        scan.BSSID = "02:00:00:00:00:01";
+        mLinccer.setAutoSubmitEnvironment(false);
+        mLinccer.onWifiScanResults(Collections.singletonList(scan));
+        mLinccer.submitCurrentEnvironment();
+    }
+
+    private long getShareCount(int outcome) {
+
+        LinccerMetrics.Snapshot snapshot = mLinccer.getMetrics().snapshot()
+                .get(LinccerMetrics.SHARE + " " + MODE);
+        return snapshot == null ? 0 : snapshot.getOutcomeCount(outcome);
+    }
+
+    private String readJournal() throws IOException {
+
+        Scanner scanner = new Scanner(new File(mDir, ShareOutbox.JOURNAL_FILE_NAME), "UTF-8");
+        try {
+            return scanner.useDelimiter("\\A").next();
+        } finally {
+            scanner.close();
+        }
+    }
+
+    private static int unusedPort() throws IOException {
+
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    // Inner Classes -----------------------------------------------------
+
+    /**
+     * Waits for the final message of a share.
+     */
+    private static class ResultHandler extends Handler {
+
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private volatile Message     mResult;
+
+        @Override
+        public void handleMessage(Message msg) {
+
+            if (msg.what != MessageType.SEARCHING) {
+                mResult = msg;
+                mDone.countDown();
+            }
+        }
+
+        Message await() throws InterruptedException {
+
+            assertTrue("no result", mDone.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            return mResult;
+        }
+    }
+}
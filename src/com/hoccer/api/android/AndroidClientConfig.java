@@ -1,74 +1,317 @@
 package com.hoccer.api.android;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.security.GeneralSecurityException;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.util.Log;
 
 import com.hoccer.api.ClientConfig;
+import com.hoccer.data.Base64;
 
 public class AndroidClientConfig extends ClientConfig {
 
+	// Constants ---------------------------------------------------------
+
+	private static final String LOG_TAG = AndroidClientConfig.class
+			.getSimpleName();
+
+	public static final String PREF_SERVER = "hoccer_server";
+	public static final String PREF_FILECACHE_SERVER = "hoccer_filecache_server";
+	public static final String PREF_HOCLET_SERVER = "hoccer_hoclet_server";
+
+	public static final String DEFAULT_SERVER = "https://linccer.hoccer.com/v3";
+	public static final String DEFAULT_FILECACHE_SERVER = "https://filecache.hoccer.com/v3";
+	public static final String DEFAULT_HOCLET_SERVER = "https://hoclet-experimental.hoccer.com/v3";
+
+	private static final int CONNECT_TIMEOUT = 10000;
+
+	/** Long enough for the share and receive long-polls */
+	private static final int SO_TIMEOUT = 70000;
+
+	private static final Endpoint LINCCER = new Endpoint(PREF_SERVER,
+			DEFAULT_SERVER);
+	private static final Endpoint FILECACHE = new Endpoint(
+			PREF_FILECACHE_SERVER, DEFAULT_FILECACHE_SERVER);
+	private static final Endpoint HOCLET = new Endpoint(PREF_HOCLET_SERVER,
+			DEFAULT_HOCLET_SERVER);
+
+	private static final Endpoint[] ENDPOINTS = { LINCCER, FILECACHE, HOCLET };
+
+	/** Resolves and pre-warms endpoints off the calling thread */
+	private static final ExecutorService RESOLVER = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, LOG_TAG);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	// Static Fields -----------------------------------------------------
+
+	/** Kept here because SharedPreferences only holds listeners weakly */
+	private static OnSharedPreferenceChangeListener sPreferenceListener;
+
+	/** Set by {@link #useSettingsServers(Context)} */
+	private static volatile Context sSettingsContext;
+
 	// Static Methods ----------------------------------------------------
 
 	public static String getServerNameFromSharedPreferences(Context context) {
 
-        SharedPreferences prefs = context.getSharedPreferences(AsyncLinccer.PREFERENCES, Context.MODE_WORLD_READABLE
-                | Context.MODE_WORLD_WRITEABLE);
+		return getFromSharedPreferences(context, PREF_SERVER, DEFAULT_SERVER);
+	}
 
-		String tmpServerName = "https://linccer.hoccer.com/v3";
-		String serverName = prefs.getString("hoccer_server", tmpServerName);
+	public static String getFileCacheServerNameFromSharedPreferences(
+			Context context) {
 
-		if (tmpServerName.equals(serverName)) {
-			SharedPreferences.Editor editor = prefs.edit();
-			editor.putString("hoccer_server", tmpServerName);
-			editor.commit();
-		}
-		return serverName;
+		return getFromSharedPreferences(context, PREF_FILECACHE_SERVER,
+				DEFAULT_FILECACHE_SERVER);
 	}
 
-	public static String getFileCacheServerNameFromSharedPreferences(
+	public static String getHocletServerNameFromSharedPreferences(
 			Context context) {
 
-        SharedPreferences prefs = context.getSharedPreferences(AsyncLinccer.PREFERENCES, Context.MODE_WORLD_READABLE
-                | Context.MODE_WORLD_WRITEABLE);
+		return getFromSharedPreferences(context, PREF_HOCLET_SERVER,
+				DEFAULT_HOCLET_SERVER);
+	}
 
-		String tmpServerName = "https://filecache.hoccer.com/v3";
-		String serverName = prefs.getString("hoccer_filecache_server",
-				tmpServerName);
+	/**
+	 * @return the Linccer server URI from the settings, resolved once and
+	 *         cached until the setting changes
+	 */
+	public static String getLinccerUri(Context context) {
 
-		if (tmpServerName.equals(serverName)) {
-			SharedPreferences.Editor editor = prefs.edit();
-			editor.putString("hoccer_filecache_server", tmpServerName);
-			editor.commit();
+		return LINCCER.get(context);
+	}
+
+	/**
+	 * @return the filecache server URI from the settings, resolved once and
+	 *         cached until the setting changes
+	 */
+	public static String getFileCacheUri(Context context) {
+
+		return FILECACHE.get(context);
+	}
+
+	/**
+	 * @return the hoclet server URI from the settings, resolved once and
+	 *         cached until the setting changes
+	 */
+	public static String getHocletUri(Context context) {
+
+		return HOCLET.get(context);
+	}
+
+	/**
+	 * Resolves the server URIs from the settings in the background and warms
+	 * up the connections to them, so the first share doesn't pay for DNS and
+	 * a full TLS handshake: the host names are looked up and a TLS handshake
+	 * is made through the default SSL context. Changes of the settings are
+	 * picked up and pre-warmed again. Connections of a particular config are
+	 * warmed by {@link #prewarmServers(ClientConfig)}. Never blocks the
+	 * caller.
+	 */
+	public static synchronized void prewarmEndpoints(Context context) {
+
+		final Context appContext = context.getApplicationContext();
+
+		if (sPreferenceListener == null) {
+
+			sPreferenceListener = new OnSharedPreferenceChangeListener() {
+				public void onSharedPreferenceChanged(
+						SharedPreferences prefs, String key) {
+
+					for (final Endpoint endpoint : ENDPOINTS) {
+						if (endpoint.mKey.equals(key)) {
+							endpoint.invalidate();
+							RESOLVER.execute(new Runnable() {
+								public void run() {
+									endpoint.prewarm(appContext, null);
+								}
+							});
+						}
+					}
+				}
+			};
+
+			RESOLVER.execute(new Runnable() {
+				public void run() {
+					getPreferences(appContext)
+							.registerOnSharedPreferenceChangeListener(
+									sPreferenceListener);
+				}
+			});
+		}
+
+		for (final Endpoint endpoint : ENDPOINTS) {
+			RESOLVER.execute(new Runnable() {
+				public void run() {
+					endpoint.prewarm(appContext, null);
+				}
+			});
 		}
-		return serverName;
 	}
 
-	public static String getHocletServerNameFromSharedPreferences(
-			Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(AsyncLinccer.PREFERENCES, Context.MODE_WORLD_READABLE
-                | Context.MODE_WORLD_WRITEABLE);
+	/**
+	 * Warms up the connections to the Linccer and filecache servers the given
+	 * config uses. If its services send their requests themselves (see
+	 * {@link #hasOwnTransport()}) a request is made through the same client,
+	 * which leaves an open connection and a TLS session in its pool; otherwise
+	 * only DNS and the default SSL context are warmed, as by
+	 * {@link #prewarmEndpoints(Context)}. Never blocks the caller.
+	 */
+	public static void prewarmServers(final ClientConfig config) {
+
+		RESOLVER.execute(new Runnable() {
+			public void run() {
+				if (config instanceof AndroidClientConfig
+						&& ((AndroidClientConfig) config).hasOwnTransport()) {
+					AndroidClientConfig androidConfig = (AndroidClientConfig) config;
+					HttpClient client = androidConfig.getTransportClient();
+					androidConfig.prewarm(LINCCER, androidConfig.mLinccerServer,
+							getLinccerBaseUri(), client);
+					androidConfig.prewarm(FILECACHE,
+							androidConfig.mFileCacheServer, getFileCacheBaseUri(),
+							client);
+				} else {
+					prewarm(getLinccerBaseUri(), null);
+					prewarm(getFileCacheBaseUri(), null);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Makes all configs without server URIs of their own use the Linccer and
+	 * filecache servers from the settings, and pre-warms them. Must be called
+	 * before the services send their first request.
+	 * 
+	 * @see #hasOwnTransport()
+	 */
+	public static void useSettingsServers(Context context) {
+
+		sSettingsContext = context.getApplicationContext();
+		prewarmEndpoints(context);
+	}
+
+	// Private Static Methods --------------------------------------------
+
+	private static SharedPreferences getPreferences(Context context) {
+
+		return context.getSharedPreferences(AsyncLinccer.PREFERENCES,
+				Context.MODE_PRIVATE);
+	}
+
+	private static String getFromSharedPreferences(Context context,
+			String key, String defaultValue) {
 
-		String tmpServerName = "https://hoclet-experimental.hoccer.com/v3";
-		String serverName = prefs.getString("hoccer_hoclet_server",
-				tmpServerName);
+		SharedPreferences prefs = getPreferences(context);
 
-		if (tmpServerName.equals(serverName)) {
+		// only write once, every write notifies the preference listener
+		if (!prefs.contains(key)) {
 			SharedPreferences.Editor editor = prefs.edit();
-			editor.putString("hoccer_hoclet_server", tmpServerName);
+			editor.putString(key, defaultValue);
 			editor.commit();
+			return defaultValue;
 		}
-		return serverName;
+		return prefs.getString(key, defaultValue);
 	}
 
-	public static void useSettingsServers(Context context) {
+	/**
+	 * @param client
+	 *            the client whose connection should be warmed, null to only
+	 *            warm DNS and the default SSL context
+	 */
+	private static void prewarm(String server, HttpClient client) {
+
+		try {
+			URI uri = URI.create(server);
+			String host = uri.getHost();
+			if (host == null) {
+				return;
+			}
+
+			if (client != null) {
+
+				// the pooled connection stays open for the first request
+				HttpResponse response = client.execute(new HttpHead(uri));
+				HttpEntity entity = response.getEntity();
+				if (entity != null) {
+					entity.consumeContent();
+				}
+				return;
+			}
+
+			InetAddress.getAllByName(host);
+
+			if ("https".equals(uri.getScheme())) {
+
+				int port = uri.getPort() == -1 ? 443 : uri.getPort();
+				SSLSocket socket = (SSLSocket) SSLSocketFactory.getDefault()
+						.createSocket();
+				try {
+					socket.connect(new InetSocketAddress(host, port),
+							CONNECT_TIMEOUT);
+					socket.setSoTimeout(CONNECT_TIMEOUT);
+					socket.startHandshake();
+				} finally {
+					socket.close();
+				}
+			}
 
-		useTestingServers();
-		// mLinccerUri = getServerNameFromSharedPreferences(context);
-		// mFileCacheUri = getFileCacheServerNameFromSharedPreferences(context);
+		} catch (IOException e) {
+			Log.w(LOG_TAG, "can't pre-warm " + server + ": " + e);
+		} catch (IllegalArgumentException e) {
+			Log.w(LOG_TAG, "bad server URI " + server);
+		}
 	}
 
+	// Instance Fields ---------------------------------------------------
+
+	/** What the in-tree transports identify and sign with */
+	private final UUID mClientId;
+	private final String mApiKey;
+	private final String mSharedSecret;
+
+	private volatile HttpConnectionPool mConnectionPool;
+
+	/** Used by the transports if no pool is set, created on first use */
+	private HttpClient mDefaultClient;
+
+	private volatile String mLinccerServer;
+	private volatile String mFileCacheServer;
+
 	// Constructors ------------------------------------------------------
 
 	public AndroidClientConfig(String applicatioName, String apiKey,
@@ -77,23 +320,268 @@ public class AndroidClientConfig extends ClientConfig {
 
 		super(applicatioName, apiKey, sharedSecret, clientId, clientName,
 				publicKey);
+		mClientId = clientId;
+		mApiKey = apiKey;
+		mSharedSecret = sharedSecret;
 	}
 
 	public AndroidClientConfig(String applicatioName, String apiKey,
 			String sharedSecret) {
 
 		super(applicatioName, apiKey, sharedSecret);
+		mClientId = UUID.randomUUID();
+		mApiKey = apiKey;
+		mSharedSecret = sharedSecret;
 	}
 
 	public AndroidClientConfig(String applicatioName, UUID clientId,
 			String clientName) {
 
 		super(applicatioName, clientId, clientName);
+		mClientId = clientId;
+		mApiKey = null;
+		mSharedSecret = null;
 	}
 
 	public AndroidClientConfig(String applicatioName) {
 
 		super(applicatioName);
+		mClientId = UUID.randomUUID();
+		mApiKey = null;
+		mSharedSecret = null;
 	}
 
+	// Public Instance Methods -------------------------------------------
+
+	/**
+	 * Sets the connection pool the {@link AsyncLinccer} and
+	 * {@link FileCacheService} using this config send their requests through.
+	 * Share one pool between all services of an app to reuse connections and
+	 * TLS sessions. Must be set before the services send their first request.
+	 * 
+	 * @see #hasOwnTransport()
+	 */
+	public void setConnectionPool(HttpConnectionPool pool) {
+
+		mConnectionPool = pool;
+	}
+
+	/**
+	 * @return the shared connection pool or null if every service uses its
+	 *         own connections
+	 */
+	public HttpConnectionPool getConnectionPool() {
+
+		return mConnectionPool;
+	}
+
+	/**
+	 * Points the services using this config at another Linccer server, e.g.
+	 * a local one for tests. Must be set before the first request.
+	 * 
+	 * @param uri
+	 *            the server's v3 base URI, null for the default
+	 * @see #hasOwnTransport()
+	 */
+	public void setLinccerServer(String uri) {
+
+		mLinccerServer = uri;
+	}
+
+	/**
+	 * @return the Linccer server URI set on this config or, after
+	 *         {@link #useSettingsServers(Context)}, the one from the settings,
+	 *         otherwise the Java API's default
+	 */
+	public String getLinccerServer() {
+
+		String uri = mLinccerServer;
+		if (uri != null) {
+			return uri;
+		}
+		Context context = sSettingsContext;
+		return context != null ? LINCCER.get(context) : getLinccerBaseUri();
+	}
+
+	/**
+	 * Points the services using this config at another filecache server. Must
+	 * be set before the first transfer.
+	 * 
+	 * @param uri
+	 *            the server's v3 base URI, null for the default
+	 * @see #hasOwnTransport()
+	 */
+	public void setFileCacheServer(String uri) {
+
+		mFileCacheServer = uri;
+	}
+
+	/**
+	 * @return the filecache server URI set on this config or, after
+	 *         {@link #useSettingsServers(Context)}, the one from the settings,
+	 *         otherwise the Java API's default
+	 */
+	public String getFileCacheServer() {
+
+		String uri = mFileCacheServer;
+		if (uri != null) {
+			return uri;
+		}
+		Context context = sSettingsContext;
+		return context != null ? FILECACHE.get(context) : getFileCacheBaseUri();
+	}
+
+	/**
+	 * The Java API opens its own connections to its default servers, so as
+	 * soon as a connection pool, a server of its own or the servers from the
+	 * settings are used, the {@link AsyncLinccer} and {@link FileCacheService}
+	 * send their requests themselves instead ({@link LinccerTransport},
+	 * {@link FileCacheTransport}). Transfers with an app supplied
+	 * HttpResponseHandler still go through the Java API.
+	 * 
+	 * @return whether the services using this config send their requests
+	 *         themselves
+	 */
+	public boolean hasOwnTransport() {
+
+		return mConnectionPool != null || mLinccerServer != null
+				|| mFileCacheServer != null || sSettingsContext != null;
+	}
+
+	// Package Instance Methods ------------------------------------------
+
+	LinccerTransport createLinccerTransport() {
+
+		return new LinccerTransport(this, getTransportClient(),
+				mClientId.toString());
+	}
+
+	FileCacheTransport createFileCacheTransport() {
+
+		return new FileCacheTransport(this, getTransportClient());
+	}
+
+	/**
+	 * Signs a request URI with the API key and shared secret, if there are
+	 * any: the api_key parameter is appended and the resulting URI is signed
+	 * with HMAC-SHA1, the Base64 encoded signature is appended as signature
+	 * parameter.
+	 */
+	String signUri(String uri) {
+
+		if (mApiKey == null || mSharedSecret == null) {
+			return uri;
+		}
+
+		String keyed = uri + (uri.indexOf('?') < 0 ? '?' : '&') + "api_key="
+				+ mApiKey;
+		try {
+			Mac mac = Mac.getInstance("HmacSHA1");
+			mac.init(new SecretKeySpec(mSharedSecret.getBytes("UTF-8"),
+					"HmacSHA1"));
+			String signature = Base64.encodeBytes(mac.doFinal(keyed
+					.getBytes("UTF-8")));
+			return keyed + "&signature=" + URLEncoder.encode(signature, "UTF-8");
+
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("can't sign requests: " + e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("can't sign requests: " + e);
+		}
+	}
+
+	// Private Instance Methods ------------------------------------------
+
+	/**
+	 * Warms the connection of the client to a server of this config: the one
+	 * set on it or, after {@link #useSettingsServers(Context)}, the endpoint
+	 * from the settings, otherwise the Java API's default.
+	 */
+	private void prewarm(Endpoint endpoint, String ownUri, String defaultUri,
+			HttpClient client) {
+
+		Context context = sSettingsContext;
+		if (ownUri != null) {
+			prewarm(ownUri, client);
+		} else if (context != null) {
+			endpoint.prewarm(context, client);
+		} else {
+			prewarm(defaultUri, client);
+		}
+	}
+
+	private synchronized HttpClient getTransportClient() {
+
+		HttpConnectionPool pool = mConnectionPool;
+		if (pool != null) {
+			return pool.getHttpClient();
+		}
+
+		if (mDefaultClient == null) {
+
+			HttpParams params = new BasicHttpParams();
+			HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT);
+			HttpConnectionParams.setSoTimeout(params, SO_TIMEOUT);
+
+			SchemeRegistry schemes = new SchemeRegistry();
+			schemes.register(new Scheme("http", PlainSocketFactory
+					.getSocketFactory(), 80));
+			schemes.register(new Scheme("https",
+					org.apache.http.conn.ssl.SSLSocketFactory
+							.getSocketFactory(), 443));
+
+			// thread safe, shares and receives of one linccer run in parallel
+			mDefaultClient = new DefaultHttpClient(
+					new ThreadSafeClientConnManager(params, schemes), params);
+		}
+		return mDefaultClient;
+	}
+
+	// Inner Classes -----------------------------------------------------
+
+	/**
+	 * A server URI stored in the settings under a key, with its cached
+	 * resolved value.
+	 */
+	private static class Endpoint {
+
+		private final String mKey;
+		private final String mDefault;
+
+		private volatile String mUri;
+
+		Endpoint(String key, String defaultUri) {
+
+			mKey = key;
+			mDefault = defaultUri;
+		}
+
+		String get(Context context) {
+
+			String uri = mUri;
+			if (uri == null) {
+
+				// only read here, the default is persisted by prewarm()
+				uri = getPreferences(context).getString(mKey, mDefault);
+				mUri = uri;
+			}
+			return uri;
+		}
+
+		void invalidate() {
+
+			mUri = null;
+		}
+
+		/**
+		 * @param client
+		 *            the client of the config which will use the endpoint, null
+		 *            to only warm DNS and the default SSL context
+		 */
+		void prewarm(Context context, HttpClient client) {
+
+			mUri = getFromSharedPreferences(context, mKey, mDefault);
+			AndroidClientConfig.prewarm(mUri, client);
+		}
+	}
 }
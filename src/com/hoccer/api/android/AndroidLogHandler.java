@@ -14,6 +14,9 @@
  ******************************************************************************/
 package com.hoccer.api.android;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -32,6 +35,11 @@ import com.hoccer.util.HoccerLoggers;
  * In Android-dependant code you should never use this, but use Android's Log
  * class instead.
  * 
+ * Call {@link engageAsync} instead of {@link engage} to hand records over to
+ * a single background thread via a lock-free ring buffer, so that logging
+ * never blocks the calling (e.g. network) thread. If the buffer is full,
+ * records are dropped and counted instead of blocking.
+ * 
  * @author Arne Handt, it@handtwerk.de
  * 
  */
@@ -49,6 +57,9 @@ public class AndroidLogHandler extends Handler {
 	private static final int CONFIG = Level.CONFIG.intValue();
 	private static final int WARNING = Level.WARNING.intValue();
 
+	/** Number of slots in the async ring buffer, must be a power of two */
+	private static final int RING_SIZE = 1024;
+
 	private static final AndroidLogHandler INSTANCE = new AndroidLogHandler();
 
 	// not used:
@@ -64,43 +75,219 @@ public class AndroidLogHandler extends Handler {
 		HoccerLoggers.addHandler(INSTANCE);
 	}
 
+	/**
+	 * Like {@link engage}, but forwards records asynchronously from a single
+	 * background thread.
+	 */
+	public static void engageAsync() {
+
+		Log.d(LOG_TAG, "engaging asynchronous log forwarding");
+		INSTANCE.startDrainer();
+		HoccerLoggers.addHandler(INSTANCE);
+	}
+
+	/**
+	 * Forwards a record created by Android-dependant code (e.g. transfer
+	 * traces) the same way as records from {@link HoccerLoggers}.
+	 */
+	static void publishRecord(LogRecord record) {
+
+		INSTANCE.publish(record);
+	}
+
+	/**
+	 * @return the number of records dropped because the async ring buffer was
+	 *         full
+	 */
+	public static long getDroppedCount() {
+
+		return INSTANCE.mDropped.get();
+	}
+
+	/**
+	 * @return the number of records forwarded to logcat
+	 */
+	public static long getForwardedCount() {
+
+		return INSTANCE.mForwarded.get();
+	}
+
+	// Instance Fields ---------------------------------------------------
+
+	/** Records waiting to be forwarded, slots are nulled by the drainer */
+	private final AtomicReferenceArray<LogRecord> mRing = new AtomicReferenceArray<LogRecord>(
+			RING_SIZE);
+
+	/** Logcat priorities of the records in mRing, guarded by the slot write */
+	private final int[] mPriorities = new int[RING_SIZE];
+
+	/** Next sequence number to be claimed by a producer */
+	private final AtomicLong mTail = new AtomicLong();
+
+	/** Next sequence number to be read by the drainer */
+	private final AtomicLong mHead = new AtomicLong();
+
+	private final AtomicLong mDropped = new AtomicLong();
+	private final AtomicLong mForwarded = new AtomicLong();
+
+	/** Drops already reported to logcat */
+	private long mReportedDrops;
+
+	private volatile Thread mDrainer;
+	private volatile boolean mDrainerParked;
+
 	// Public Instance Methods -------------------------------------------
 
 	@Override
 	public void publish(LogRecord record) {
 
-		final String msg = record.getMessage();
-		final String tag = record.getLoggerName();
-		final int level = record.getLevel().intValue();
+		// decide on the level first so dropped records are never formatted
+		final int priority = toPriority(record.getLevel().intValue());
+		if (priority < 0) {
+			return;
+		}
+
+		if (mDrainer == null) {
+
+			forward(priority, record);
+			return;
+		}
+
+		enqueue(priority, record);
+	}
+
+	@Override
+	public void flush() {
+
+		Thread drainer = mDrainer;
+		if (drainer != null) {
+			LockSupport.unpark(drainer);
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+
+	// Private Instance Methods ------------------------------------------
+
+	/**
+	 * @return the logcat priority for a java.util.logging level or -1 if the
+	 *         record should not be forwarded
+	 */
+	private int toPriority(int level) {
 
 		// switch doesn't work because log level int values can't be determined
 		// at compile time
 		if (ALL == level || FINEST == level || FINER == level) {
 
-			Log.v(tag, msg);
+			return Log.VERBOSE;
 
 		} else if (FINE == level) {
 
-			Log.d(tag, msg);
+			return Log.DEBUG;
 
 		} else if (CONFIG == level) {
 
-			Log.i(tag, msg);
+			return Log.INFO;
 
 		} else if (WARNING == level) {
 
-			Log.w(tag, msg);
+			return Log.WARN;
 		}
 
 		// INFO, SEVERE: handled by the system
 		// OFF: ignored
+		return -1;
 	}
 
-	@Override
-	public void flush() {
+	private void forward(int priority, LogRecord record) {
+
+		Log.println(priority, record.getLoggerName(), String.valueOf(record
+				.getMessage()));
+		mForwarded.incrementAndGet();
 	}
 
-	@Override
-	public void close() {
+	private void enqueue(int priority, LogRecord record) {
+
+		long tail;
+		do {
+			tail = mTail.get();
+			if (tail - mHead.get() >= RING_SIZE) {
+
+				// never block the logging thread
+				mDropped.incrementAndGet();
+				return;
+			}
+		} while (!mTail.compareAndSet(tail, tail + 1));
+
+		int index = (int) tail & (RING_SIZE - 1);
+		mPriorities[index] = priority;
+		mRing.set(index, record);
+
+		if (mDrainerParked) {
+			LockSupport.unpark(mDrainer);
+		}
+	}
+
+	private synchronized void startDrainer() {
+
+		if (mDrainer != null) {
+			return;
+		}
+
+		Thread drainer = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, LOG_TAG);
+		drainer.setDaemon(true);
+		drainer.setPriority(Thread.MIN_PRIORITY);
+		mDrainer = drainer;
+		drainer.start();
+	}
+
+	private void drain() {
+
+		while (true) {
+
+			long head = mHead.get();
+			int index = (int) head & (RING_SIZE - 1);
+			LogRecord record = mRing.get(index);
+
+			if (record == null) {
+
+				// the ring is drained, so any drops happened before this point
+				reportDrops();
+
+				// slot not claimed yet or claimed but not yet written; the
+				// producer writes the slot before reading mDrainerParked, so
+				// either we see its record here or it sees us parked and
+				// unparks us
+				mDrainerParked = true;
+				if (mRing.get(index) == null) {
+					LockSupport.park(this);
+				}
+				mDrainerParked = false;
+				continue;
+			}
+
+			int priority = mPriorities[index];
+			mRing.set(index, null);
+			mHead.lazySet(head + 1);
+
+			forward(priority, record);
+		}
+	}
+
+	private void reportDrops() {
+
+		long dropped = mDropped.get();
+		if (dropped != mReportedDrops) {
+
+			Log.w(LOG_TAG, "dropped " + (dropped - mReportedDrops)
+					+ " log records");
+			mReportedDrops = dropped;
+		}
 	}
 }
\ No newline at end of file
@@ -29,7 +29,8 @@ public abstract class AndroidStreamableContent extends GenericStreamableContent
 
     // Constants ---------------------------------------------------------
 
-    private static final String LOG_TAG = AndroidStreamableContent.class.getSimpleName();
+    /** Log.isLoggable() rejects tags longer than 23 characters before API 24 */
+    private static final String LOG_TAG = "AndroidStreamContent";
 
     // Instance Fields ---------------------------------------------------
 
@@ -102,7 +103,9 @@ public abstract class AndroidStreamableContent extends GenericStreamableContent
     public long getNewStreamLength() throws IOException {
 
         assertUriNotNull();
-        Log.v(LOG_TAG, "getNewStreamLength " + getDataUri());
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, "getNewStreamLength " + getDataUri());
+        }
         AssetFileDescriptor file = mContentResolver.openAssetFileDescriptor(getDataUri(), "r");
         return file.getLength();
     }
@@ -120,7 +123,9 @@ public abstract class AndroidStreamableContent extends GenericStreamableContent
     public long getRawStreamLength() throws IOException {
 
         assertUriNotNull();
-        Log.v(LOG_TAG, "getRawStreamLength " + getDataUri());
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, "getRawStreamLength " + getDataUri());
+        }
         return mContentResolver.openAssetFileDescriptor(getDataUri(), "r").getLength();
     }
 
@@ -29,7 +29,9 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 
+import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -46,6 +48,7 @@ import com.hoccer.api.BadModeException;
 import com.hoccer.api.ClientActionException;
 import com.hoccer.api.ClientConfig;
 import com.hoccer.api.CollidingActionsException;
+import com.hoccer.api.FileCache;
 import com.hoccer.api.Linccer;
 import com.hoccer.api.UpdateException;
 import com.hoccer.data.Base64;
@@ -88,79 +91,215 @@ public class AsyncLinccer extends Linccer {
         public final static int UNKNOWN_EXCEPTION = -4;
     }
 
+    private final LinccerMetrics mMetrics = new LinccerMetrics();
+
+    private final ClientConfig   mConfig;
+
+    private FileCacheClient      mFileCacheClient;
+
+    /** Null if the Java API sends the requests, see {@link #getTransport()} */
+    private LinccerTransport     mTransport;
+    private boolean              mTransportChecked;
+
     public AsyncLinccer(ClientConfig config) {
         super(config);
+        mConfig = config;
+    }
+
+    /**
+     * @return the config this linccer was created with
+     */
+    public ClientConfig getClientConfig() {
+        return mConfig;
+    }
+
+    /**
+     * @return latencies and outcomes of all operations of this linccer
+     */
+    public LinccerMetrics getMetrics() {
+        return mMetrics;
     }
 
     public void asyncShare(final String mode, final JSONObject payload, final Handler handler) {
         new Thread(new Runnable() {
             public void run() {
+                handler.handleMessage(syncShare(mode, payload, handler));
+            }
+        }).start();
+    }
 
-                Message msg = handler.obtainMessage();
-                try {
-                    handler.handleMessage(handler.obtainMessage(MessageType.SEARCHING));
-                    msg.obj = share(mode, payload);
+    /**
+     * Shares on the calling thread, reporting SEARCHING to the handler.
+     * 
+     * @return the result message, not yet handled
+     */
+    Message syncShare(String mode, JSONObject payload, Handler handler) {
+
+        TransferTracer.Span span = TransferTracer.begin(TransferTracer.SHARE);
+        long start = System.nanoTime();
+        Message msg = handler.obtainMessage();
+        try {
+            handler.handleMessage(handler.obtainMessage(MessageType.SEARCHING));
+            start = System.nanoTime();
+            LinccerTransport transport = getTransport();
+            msg.obj = transport != null ? transport.share(mode, payload) : share(mode, payload);
+
+            if (msg.obj != null) {
+                msg.what = MessageType.SHARED;
+            } else {
+                msg.what = MessageType.NOTHING_SHARED;
+            }
+        } catch (HttpResponseException e) {
+            msg.what = toMessageType(e);
+            msg.obj = e;
+        } catch (BadModeException e) {
+            msg.what = MessageType.BAD_MODE;
+            msg.obj = e;
+        } catch (ClientActionException e) {
+            msg.what = MessageType.BAD_CLIENT_ACTION;
+            msg.obj = e;
+        } catch (CollidingActionsException e) {
+            msg.what = MessageType.COLLISION;
+            msg.obj = e;
+        } catch (Exception e) {
+            msg.what = MessageType.UNKNOWN_EXCEPTION;
+            msg.obj = e;
+        }
 
-                    if (msg.obj != null) {
-                        msg.what = MessageType.SHARED;
-                    } else {
-                        msg.what = MessageType.NOTHING_SHARED;
-                    }
-                } catch (BadModeException e) {
-                    msg.what = MessageType.BAD_MODE;
-                    msg.obj = e;
-                } catch (ClientActionException e) {
-                    msg.what = MessageType.BAD_CLIENT_ACTION;
-                    msg.obj = e;
-                } catch (CollidingActionsException e) {
-                    msg.what = MessageType.COLLISION;
-                    msg.obj = e;
-                } catch (Exception e) {
-                    msg.what = MessageType.UNKNOWN_EXCEPTION;
-                    msg.obj = e;
-                }
+        mMetrics.record(LinccerMetrics.SHARE, mode, (System.nanoTime() - start) / 1000,
+                msg.what);
+        TransferTracer.end(span, msg.what);
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, msg.what + " " + msg.obj);
+        }
 
-                Log.v("Linccer", msg.what + " " + msg.obj);
+        return msg;
+    }
 
-                handler.handleMessage(msg);
+    public void asyncReceive(final String mode, final Handler handler) {
+        new Thread(new Runnable() {
+            public void run() {
+                handler.handleMessage(syncReceive(mode, handler));
             }
         }).start();
     }
 
-    public void asyncReceive(final String mode, final Handler handler) {
+    /**
+     * Receives like {@link #asyncReceive(String, Handler)} and additionally starts prefetching
+     * the filecache content referenced by the received payload before the message is handed to
+     * the handler, so downloads run while the UI processes the message.
+     */
+    public void asyncReceive(final String mode, final Handler handler,
+            final FileCacheService prefetcher) {
         new Thread(new Runnable() {
             public void run() {
+                Message msg = syncReceive(mode, handler);
+                if (msg.what == MessageType.RECEIVED && prefetcher != null) {
+                    prefetcher.prefetchReferenced((JSONObject) msg.obj);
+                }
+                handler.handleMessage(msg);
+            }
+        }).start();
+    }
 
-                Message msg = handler.obtainMessage();
-                try {
-                    handler.handleMessage(handler.obtainMessage(MessageType.SEARCHING));
-                    msg.obj = receive(mode);
+    /**
+     * Receives on the calling thread, reporting SEARCHING to the handler.
+     * 
+     * @return the result message, not yet handled
+     */
+    Message syncReceive(String mode, Handler handler) {
+
+        TransferTracer.Span span = TransferTracer.begin(TransferTracer.RECEIVE);
+        long start = System.nanoTime();
+        Message msg = handler.obtainMessage();
+        try {
+            handler.handleMessage(handler.obtainMessage(MessageType.SEARCHING));
+            start = System.nanoTime();
+            LinccerTransport transport = getTransport();
+            msg.obj = transport != null ? transport.receive(mode) : receive(mode);
+
+            if (msg.obj != null) {
+                msg.what = MessageType.RECEIVED;
+            } else {
+                msg.what = MessageType.NOTHING_RECEIVED;
+            }
+        } catch (HttpResponseException e) {
+            msg.what = toMessageType(e);
+            msg.obj = e;
+        } catch (BadModeException e) {
+            msg.what = MessageType.BAD_MODE;
+            msg.obj = e;
+        } catch (ClientActionException e) {
+            msg.what = MessageType.BAD_CLIENT_ACTION;
+            msg.obj = e;
+        } catch (CollidingActionsException e) {
+            msg.what = MessageType.COLLISION;
+            msg.obj = e;
+        } catch (Exception e) {
+            msg.what = MessageType.UNKNOWN_EXCEPTION;
+            msg.obj = e;
+        }
 
-                    if (msg.obj != null) {
-                        msg.what = MessageType.RECEIVED;
-                    } else {
-                        msg.what = MessageType.NOTHING_RECEIVED;
-                    }
-                } catch (BadModeException e) {
-                    msg.what = MessageType.BAD_MODE;
-                    msg.obj = e;
-                } catch (ClientActionException e) {
-                    msg.what = MessageType.BAD_CLIENT_ACTION;
-                    msg.obj = e;
-                } catch (CollidingActionsException e) {
-                    msg.what = MessageType.COLLISION;
-                    msg.obj = e;
+        mMetrics.record(LinccerMetrics.RECEIVE, mode, (System.nanoTime() - start) / 1000,
+                msg.what);
+        TransferTracer.end(span, msg.what);
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, msg.what + " " + msg.obj);
+        }
+
+        return msg;
+    }
+
+    /**
+     * Shares a payload which is written incrementally instead of being built as a
+     * {@link JSONObject}. Large payloads are passed through the filecache, see
+     * {@link StreamedPayload}; receivers need {@link #asyncReceiveStreamed} to read them. A
+     * receiver using plain {@link #asyncReceive} gets the envelope
+     * <code>{"streamed_payload": uri, "streamed_payload_length": n}</code> instead of the payload
+     * whenever it was larger than {@link StreamedPayload#INLINE_LIMIT}.
+     */
+    public void asyncShareStreamed(final Context context, final String mode,
+            final StreamedPayload.Producer producer, final Handler handler) {
+        new Thread(new Runnable() {
+            public void run() {
+                JSONObject payload;
+                try {
+                    payload = StreamedPayload.share(context, getFileCacheClient(), producer);
                 } catch (Exception e) {
-                    msg.what = MessageType.UNKNOWN_EXCEPTION;
+                    Log.w(LOG_TAG, "can't prepare streamed payload", e);
+                    Message msg = handler.obtainMessage(MessageType.UNKNOWN_EXCEPTION);
                     msg.obj = e;
+                    handler.handleMessage(msg);
+                    return;
                 }
+                handler.handleMessage(syncShare(mode, payload, handler));
+            }
+        }).start();
+    }
 
-                Log.v("Linccer", msg.what + " " + msg.obj);
-
+    /**
+     * Receives a payload and passes it to the consumer on the receiving thread, downloading it
+     * from the filecache first if it was shared streamed. The handler gets the consumer's result
+     * with {@link MessageType#RECEIVED}.
+     */
+    public void asyncReceiveStreamed(final Context context, final String mode,
+            final StreamedPayload.Consumer consumer, final Handler handler) {
+        new Thread(new Runnable() {
+            public void run() {
+                Message msg = syncReceive(mode, handler);
+                if (msg.what == MessageType.RECEIVED) {
+                    try {
+                        msg.obj = StreamedPayload.receive(context, getFileCacheClient(),
+                                (JSONObject) msg.obj, consumer);
+                    } catch (Exception e) {
+                        Log.w(LOG_TAG, "can't read streamed payload", e);
+                        msg.what = MessageType.UNKNOWN_EXCEPTION;
+                        msg.obj = e;
+                    }
+                }
                 handler.handleMessage(msg);
             }
         }).start();
-
     }
 
     // public void asyncPeek(String groupID, final Handler handler) {
@@ -199,20 +338,113 @@ public class AsyncLinccer extends Linccer {
             for (ScanResult scan : scanResults) {
                 bssids.add(scan.BSSID);
             }
-            onWifiChanged(bssids);
+            LinccerTransport transport = getTransport();
+            if (transport != null) {
+                transport.onWifiChanged(bssids);
+            } else {
+                onWifiChanged(bssids);
+            }
         }
     }
 
     public void onNetworkChanged(Location location) throws UpdateException,
             ClientProtocolException, IOException {
-        onNetworkChanged(location.getLatitude(), location.getLongitude(),
-                (int) location.getAccuracy(), location.getTime());
+        LinccerTransport transport = getTransport();
+        if (transport != null) {
+            transport.onNetworkChanged(location.getLatitude(), location.getLongitude(),
+                    (int) location.getAccuracy(), location.getTime());
+        } else {
+            onNetworkChanged(location.getLatitude(), location.getLongitude(),
+                    (int) location.getAccuracy(), location.getTime());
+        }
     }
 
     public void onGpsChanged(Location location) throws UpdateException, ClientProtocolException,
             IOException {
-        onGpsChanged(location.getLatitude(), location.getLongitude(), (int) location.getAccuracy(),
-                location.getTime());
+        LinccerTransport transport = getTransport();
+        if (transport != null) {
+            transport.onGpsChanged(location.getLatitude(), location.getLongitude(),
+                    (int) location.getAccuracy(), location.getTime());
+        } else {
+            onGpsChanged(location.getLatitude(), location.getLongitude(),
+                    (int) location.getAccuracy(), location.getTime());
+        }
+    }
+
+    /**
+     * Submits the environment collected by {@link #onWifiScanResults(List)},
+     * {@link #onNetworkChanged(Location)} and {@link #onGpsChanged(Location)} through whichever
+     * transport this linccer uses.
+     */
+    public void submitCurrentEnvironment() throws UpdateException, ClientProtocolException,
+            IOException {
+        LinccerTransport transport = getTransport();
+        if (transport != null) {
+            transport.submitEnvironment();
+        } else {
+            submitEnvironment();
+        }
+    }
+
+    /**
+     * @param autoSubmit
+     *            whether every change of the environment is submitted right away
+     */
+    public void setAutoSubmitEnvironment(boolean autoSubmit) {
+        LinccerTransport transport = getTransport();
+        if (transport != null) {
+            transport.setAutoSubmit(autoSubmit);
+        } else {
+            autoSubmitEnvironmentChanges(autoSubmit);
+        }
+    }
+
+    /**
+     * @return the transport for the requests of this linccer, null if the Java API sends them
+     *         (see {@link AndroidClientConfig#hasOwnTransport()}); decided on first use
+     */
+    synchronized LinccerTransport getTransport() {
+        if (!mTransportChecked) {
+            mTransportChecked = true;
+            if (mConfig instanceof AndroidClientConfig
+                    && ((AndroidClientConfig) mConfig).hasOwnTransport()) {
+                mTransport = ((AndroidClientConfig) mConfig).createLinccerTransport();
+            }
+        }
+        return mTransport;
+    }
+
+    /**
+     * @return the filecache for streamed payloads, created on first use
+     */
+    synchronized FileCacheClient getFileCacheClient() {
+        if (mFileCacheClient == null) {
+            if (mConfig instanceof AndroidClientConfig
+                    && ((AndroidClientConfig) mConfig).hasOwnTransport()) {
+                mFileCacheClient = ((AndroidClientConfig) mConfig).createFileCacheTransport();
+            } else {
+                mFileCacheClient = new FileCacheAdapter(new FileCache(mConfig));
+            }
+        }
+        return mFileCacheClient;
+    }
+
+    /**
+     * @return the outcome of a share or receive the server answered with an unexpected status
+     */
+    private static int toMessageType(HttpResponseException e) {
+        int status = e.getStatusCode();
+        if (status == HttpStatus.SC_CONFLICT) {
+            return MessageType.COLLISION;
+        }
+        if (status == HttpStatus.SC_NOT_FOUND) {
+            return MessageType.BAD_MODE;
+        }
+        if (status >= 400 && status < 500) {
+            return MessageType.BAD_CLIENT_ACTION;
+        }
+        // server errors and anything unexpected, often temporary
+        return MessageType.UNKNOWN_EXCEPTION;
     }
 
     public static void renewClientIdInSharedPreferences(Context context) {
@@ -226,12 +458,13 @@ public class AsyncLinccer extends Linccer {
     public static String getClientIdFromSharedPreferences(Context context) {
         SharedPreferences prefs = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
 
-        String tmpUUID = UUID.randomUUID().toString();
-        String storedUUID = prefs.getString("client_uuid", tmpUUID);
+        String storedUUID = prefs.getString("client_uuid", null);
 
-        if (tmpUUID.equals(storedUUID)) {
+        // only generate an id when there is none, UUID.randomUUID() seeds a SecureRandom
+        if (storedUUID == null) {
+            storedUUID = UUID.randomUUID().toString();
             SharedPreferences.Editor editor = prefs.edit();
-            editor.putString("client_uuid", tmpUUID);
+            editor.putString("client_uuid", storedUUID);
             editor.commit();
         }
         return storedUUID;
@@ -268,12 +501,13 @@ public class AsyncLinccer extends Linccer {
     public static String getEncryptionKeyFromSharedPreferences(Context context) {
         SharedPreferences prefs = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
 
-        String defaultValue = newEncryptionKey();
-        String storedValue = prefs.getString(PREF_SHARED_KEY, defaultValue);
+        String storedValue = prefs.getString(PREF_SHARED_KEY, null);
 
-        if (defaultValue.equals(storedValue)) {
+        // only generate a key when there is none
+        if (storedValue == null) {
+            storedValue = newEncryptionKey();
             SharedPreferences.Editor editor = prefs.edit();
-            editor.putString(PREF_SHARED_KEY, defaultValue);
+            editor.putString(PREF_SHARED_KEY, storedValue);
             editor.commit();
         }
         return storedValue;
@@ -286,7 +520,9 @@ public class AsyncLinccer extends Linccer {
 
         String defaultValue = "";
         String storedValue = prefs.getString(PREF_PRIVATE_KEY, defaultValue);
-        Log.v(LOG_TAG, "getPrivateKeyFromSharedPreferences, storedValue=" + storedValue);
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, "getPrivateKeyFromSharedPreferences, storedValue=" + storedValue);
+        }
 
         byte[] myEncodedPrivateKey = Base64.decode(storedValue);
 
@@ -306,15 +542,16 @@ public class AsyncLinccer extends Linccer {
     public static String getUserNameFromSharedPreferences(Context context) {
         SharedPreferences prefs = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
 
-        String defaultValue = "<" + Build.MODEL + ">";
-        String clientName = prefs.getString("client_name", defaultValue);
-
-        if (defaultValue.equals(clientName)) {
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putString("client_name", defaultValue);
-            editor.commit();
+        if (prefs.contains("client_name")) {
+            return prefs.getString("client_name", null);
         }
-        return clientName;
+
+        // only the first call persists the default, later ones must not hit the disk
+        String defaultValue = "<" + Build.MODEL + ">";
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putString("client_name", defaultValue);
+        editor.commit();
+        return defaultValue;
     }
 
     public static byte[] extractKey(Context context, JSONObject password)
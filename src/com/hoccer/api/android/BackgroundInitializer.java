@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Does the startup work of the Linccer binding on a low priority background thread instead of on
+ * first use on the main thread: loads the preferences and the client id (generating it on the
+ * very first start), resolves the server URIs and looks up the system services of a
+ * {@link LinccLocationManager}. Everything it does is also done lazily when needed, so starting it
+ * is optional and the app never has to wait for it.
+ * 
+ * The time each step took is logged and available from {@link #getTrace()}.
+ */
+public class BackgroundInitializer {
+
+    // Constants ---------------------------------------------------------
+
+    private static final String LOG_TAG     = BackgroundInitializer.class.getSimpleName();
+
+    public static final String  PREFERENCES = "preferences";
+    public static final String  ENDPOINTS   = "endpoints";
+    public static final String  LOCATION    = "location";
+
+    // Static Methods ----------------------------------------------------
+
+    /**
+     * @param locationManager
+     *            the location manager to initialize, may be null
+     */
+    public static BackgroundInitializer start(Context context,
+            LinccLocationManager locationManager) {
+
+        final BackgroundInitializer initializer = new BackgroundInitializer(context
+                .getApplicationContext(), locationManager);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                initializer.run();
+            }
+        }, LOG_TAG);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return initializer;
+    }
+
+    // Instance Fields ---------------------------------------------------
+
+    private final Context              mContext;
+    private final LinccLocationManager mLocationManager;
+    private final CountDownLatch       mDone  = new CountDownLatch(1);
+
+    /** Duration of each finished step in micros, guarded by this */
+    private final Map<String, Long>    mTrace = new LinkedHashMap<String, Long>();
+
+    // Constructors ------------------------------------------------------
+
+    private BackgroundInitializer(Context context, LinccLocationManager locationManager) {
+
+        mContext = context;
+        mLocationManager = locationManager;
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    /**
+     * @return true if all steps finished within the timeout
+     */
+    public boolean await(long timeoutMillis) throws InterruptedException {
+
+        return mDone.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isDone() {
+
+        return mDone.getCount() == 0;
+    }
+
+    /**
+     * @return the duration in micros of each finished step, in the order they ran
+     */
+    public synchronized Map<String, Long> getTrace() {
+
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(mTrace));
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private void run() {
+
+        try {
+            long start = System.nanoTime();
+            AsyncLinccer.getClientIdFromSharedPreferences(mContext);
+            AsyncLinccer.getUserNameFromSharedPreferences(mContext);
+            start = step(PREFERENCES, start);
+
+            AndroidClientConfig.getLinccerUri(mContext);
+            AndroidClientConfig.getFileCacheUri(mContext);
+            start = step(ENDPOINTS, start);
+
+            if (mLocationManager != null) {
+                mLocationManager.initialize();
+                step(LOCATION, start);
+            }
+
+        } catch (RuntimeException e) {
+            // the lazy initialization on first use will run into it again
+            Log.w(LOG_TAG, "background initialization failed", e);
+        } finally {
+            mDone.countDown();
+        }
+    }
+
+    /**
+     * @return the end of the step, the start of the next one
+     */
+    private long step(String name, long start) {
+
+        long end = System.nanoTime();
+        long micros = (end - start) / 1000;
+        synchronized (this) {
+            mTrace.put(name, micros);
+        }
+        Log.d(LOG_TAG, name + " " + micros + "us");
+        return end;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.io.IOException;
+
+import com.hoccer.api.FileCache;
+import com.hoccer.data.StreamableContent;
+
+/**
+ * A {@link FileCacheClient} running its transfers through the Java API's {@link FileCache}.
+ */
+class FileCacheAdapter implements FileCacheClient {
+
+    // Instance Fields ---------------------------------------------------
+
+    private final FileCache mFileCache;
+
+    // Constructors ------------------------------------------------------
+
+    FileCacheAdapter(FileCache fileCache) {
+
+        mFileCache = fileCache;
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    public String store(StreamableContent source, int secondsUntilExpired,
+            TransferCompletionHandler.Listener listener) throws IOException {
+
+        try {
+            return mFileCache.asyncStore(source, secondsUntilExpired, TransferCompletionHandler
+                    .wrap(null, listener));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("can't store: " + e);
+        }
+    }
+
+    public void fetch(String uri, StreamableContent sink,
+            TransferCompletionHandler.Listener listener) {
+
+        mFileCache.asyncFetch(uri, sink, TransferCompletionHandler.wrap(null, listener));
+    }
+
+    public void cancel(String uri) {
+
+        mFileCache.cancel(uri);
+    }
+}
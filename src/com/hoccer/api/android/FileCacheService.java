@@ -14,53 +14,763 @@
  */
 package com.hoccer.api.android;
 
+import java.io.File;
 import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.os.IBinder;
+import android.util.Log;
 
 import com.hoccer.api.ClientConfig;
 import com.hoccer.api.FileCache;
+import com.hoccer.data.CryptoHelper;
 import com.hoccer.data.StreamableContent;
 import com.hoccer.http.HttpResponseHandler;
 
+/**
+ * Runs filecache transfers according to the {@link TransferPolicy} of the current network: the
+ * number of parallel transfers is limited, fetches beyond the limit are queued, large non-urgent
+ * stores wait for a better network, and running fetches are paused when the network changes and
+ * restarted once it is connected again. Content referenced by a received payload can be prefetched
+ * into the cache directory behind all other fetches, see {@link #prefetchReferenced(JSONObject)}.
+ * 
+ * All transfers are tracked in a {@link TransferRegistry}, so {@link #isOngoing(String)} and the
+ * idle check never wait for transfer threads; only the order of waiting transfers is kept under a
+ * lock.
+ * 
+ * If the config passed to {@link #init(ClientConfig)} is an {@link AndroidClientConfig} with a
+ * transport of its own, transfers without an HttpResponseHandler are sent through its connections
+ * and servers; a {@link TransferListener} learns when they end.
+ */
 public class FileCacheService extends Service {
 
+    private static final String LOG_TAG          = FileCacheService.class.getSimpleName();
+
+    private static final String PREFETCH_DIR     = "prefetch";
+
+    /** Prefetched files older than this are deleted when the service starts */
+    private static final long   PREFETCH_MAX_AGE = 60 * 60 * 1000;
+
+    /** Runs the transfers with an app supplied HttpResponseHandler */
     private FileCache mFileCache;
 
+    /** Runs all other transfers, mTransport if the config has its own, else mFileCache */
+    private FileCacheClient mClient;
+
+    /** Null if the Java API sends the requests, see AndroidClientConfig#hasOwnTransport() */
+    private FileCacheTransport mTransport;
+
+    /** Prefix of the URIs of the filecache server, taken from the config passed to init() */
+    private volatile String mFileCacheUri;
+
+    private volatile TransferListener mTransferListener;
+
+    private volatile TransferPolicy mPolicy = TransferPolicy.WIFI;
+
+    /** Network type the running transfers were started on, -1 if offline, guarded by mQueueLock */
+    private int mNetworkType = -1;
+
+    private final TransferRegistry mRegistry = new TransferRegistry(
+            new TransferRegistry.IdleListener() {
+                public void onIdle() {
+                    if (mStopWhenIdle) {
+                        Log.d(LOG_TAG, "all transfers finished, stopping");
+                        stopSelf();
+                    }
+                }
+            });
+
+    private final Object mQueueLock = new Object();
+
+    /**
+     * Queued and paused fetches in start order, guarded by mQueueLock. Cancelled entries are
+     * skipped when they come up.
+     */
+    private final LinkedList<Transfer> mQueued = new LinkedList<Transfer>();
+
+    /** Non-urgent stores waiting for a better network, guarded by mQueueLock */
+    private final LinkedList<DeferredStore> mDeferred = new LinkedList<DeferredStore>();
+
+    /** Whether waiting transfers are held back by {@link #pauseAll()}, guarded by mQueueLock */
+    private boolean mHeld;
+
+    private volatile boolean mStopWhenIdle;
+
+    private BroadcastReceiver mConnectivityReceiver;
+
+    private File mPrefetchDir;
+
+    /**
+     * Notified when a transfer of this service ends, whichever transport ran it and whether or
+     * not it has an HttpResponseHandler. Called on a transfer thread.
+     */
+    public interface TransferListener {
+        void onTransferFinished(String uri, boolean success);
+    }
+
+    /**
+     * Notified when a store passed to {@link FileCacheService#storeWhenSuitable} actually starts.
+     */
+    public interface StoreListener {
+        void onStoreStarted(String uri);
+
+        void onStoreFailed(Exception e);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        mConnectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onNetworkChanged();
+            }
+        };
+        registerReceiver(mConnectivityReceiver, new IntentFilter(
+                ConnectivityManager.CONNECTIVITY_ACTION));
+        onNetworkChanged();
+
+        mPrefetchDir = new File(getCacheDir(), PREFETCH_DIR);
+        new Thread(new Runnable() {
+            public void run() {
+                deleteOldPrefetches();
+            }
+        }, "PrefetchCleanup").start();
+    }
+
+    @Override
+    public void onDestroy() {
+        unregisterReceiver(mConnectivityReceiver);
+        super.onDestroy();
+    }
+
     public void init(ClientConfig config) {
         if (mFileCache == null) {
             mFileCache = new FileCache(config);
+            if (config instanceof AndroidClientConfig) {
+                AndroidClientConfig androidConfig = (AndroidClientConfig) config;
+                mFileCacheUri = androidConfig.getFileCacheServer();
+                if (androidConfig.hasOwnTransport()) {
+                    mTransport = androidConfig.createFileCacheTransport();
+                    mTransport.setChunkSize(mPolicy.getChunkSize());
+                }
+            } else {
+                mFileCacheUri = ClientConfig.getFileCacheBaseUri();
+            }
+            mClient = mTransport != null ? mTransport : new FileCacheAdapter(mFileCache);
         }
     }
 
+    /**
+     * @param listener
+     *            notified of the end of every transfer, null for none
+     */
+    public void setTransferListener(TransferListener listener) {
+        mTransferListener = listener;
+    }
+
+    /**
+     * Stops the service as soon as no transfer is queued, running, paused or deferred any more,
+     * which may be right away.
+     */
     protected void stopWhenAllLoadsFinished() {
-        if (!mFileCache.hasOngoingRequests()) {
+        mStopWhenIdle = true;
+        if (mRegistry.isIdle()) {
             stopSelf();
         }
     }
 
+    /**
+     * @return whether no transfer is queued, running, paused or deferred
+     */
+    public boolean isIdle() {
+        return mRegistry.isIdle();
+    }
+
+    public TransferPolicy getTransferPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * Fetches the content into the sink. A prefetch of the same URI is cancelled, so check
+     * {@link #getPrefetchedFile(String)} first.
+     */
     public void fetch(String uri, StreamableContent sink, HttpResponseHandler responseHandler) {
-        mFileCache.asyncFetch(uri, sink, responseHandler);
+        Transfer prefetch = takePrefetch(uri);
+        if (prefetch != null) {
+            cancelPrefetch(prefetch);
+        }
+
+        Transfer transfer = new Transfer(uri, sink, responseHandler, null);
+        mRegistry.add(transfer, TransferRegistry.QUEUED, true);
+        synchronized (mQueueLock) {
+            // ahead of prefetches, which only use otherwise idle slots
+            addBeforePrefetches(transfer);
+        }
+        startWaiting();
+    }
+
+    /**
+     * Downloads the content into the cache directory when a slot is free and no other fetch is
+     * waiting. Once it is complete it is available from {@link #getPrefetchedFile(String)}.
+     * 
+     * @return false if the content is already prefetched or being fetched
+     */
+    public boolean prefetch(String uri) {
+        return prefetch(uri, false);
+    }
+
+    /**
+     * Prefetches all filecache URIs found in the values of a received payload, so they are local
+     * by the time the user opens them. Previews linked by {@link PreviewContent} are fetched
+     * before everything else. Call it before handing the payload to the UI.
+     * 
+     * @return the number of prefetches started
+     */
+    public int prefetchReferenced(JSONObject payload) {
+        String prefix = mFileCacheUri;
+        if (prefix == null) {
+            Log.w(LOG_TAG, "not initialized, can't prefetch referenced uris");
+            return 0;
+        }
+
+        List<String> previews = new ArrayList<String>();
+        List<String> uris = new ArrayList<String>();
+        collectFileCacheUris(payload, prefix, previews, uris);
+
+        int started = 0;
+        // in reverse, as each urgent prefetch is queued ahead of the previous ones
+        for (int i = previews.size() - 1; i >= 0; i--) {
+            if (prefetch(previews.get(i), true)) {
+                started++;
+            }
+        }
+        for (String uri : uris) {
+            if (prefetch(uri, false)) {
+                started++;
+            }
+        }
+        Log.d(LOG_TAG, "prefetching " + started + " of " + (previews.size() + uris.size())
+                + " referenced uris");
+        return started;
     }
 
+    /**
+     * @return the completely prefetched content of the URI or null if it was not prefetched (yet)
+     */
+    public File getPrefetchedFile(String uri) {
+        File file = getPrefetchFile(uri);
+        return file != null && file.exists() ? file : null;
+    }
+
+    /**
+     * Stores the content right away, regardless of the network policy.
+     */
     public String store(StreamableContent source, int secondsUntilExipred,
             HttpResponseHandler responseHandler) throws IOException, Exception {
-        String uri = mFileCache.asyncStore(source, secondsUntilExipred, responseHandler);
+        Transfer transfer = new Transfer(null, source, responseHandler, null);
+        transfer.mSpan = TransferTracer.begin(TransferTracer.FILECACHE_STORE);
+        mRegistry.add(transfer, TransferRegistry.RUNNING, false);
+
+        String uri = null;
+        try {
+            if (responseHandler == null) {
+                uri = mClient.store(source, secondsUntilExipred, listenerFor(transfer, 0));
+            } else {
+                uri = mFileCache.asyncStore(source, secondsUntilExipred, wrap(transfer, 0));
+            }
+        } finally {
+            if (uri != null) {
+                mRegistry.bind(transfer, uri);
+                notifyFinished(transfer);
+            } else if (mRegistry.finish(transfer, TransferRegistry.FAILED)) {
+                TransferTracer.end(transfer.mSpan, TransferTracer.OUTCOME_FAILED);
+            }
+        }
+        return uri;
+    }
+
+    /**
+     * Creates a small preview of an image or video, stores it right away and links it from the
+     * payload. Call this before storing the full content, so the preview is uploaded first;
+     * receivers calling {@link #prefetchReferenced(JSONObject)} fetch previews before all other
+     * content.
+     * 
+     * @return the preview's URI or null if the content has no preview
+     */
+    public String storePreview(AndroidStreamableContent source, int maxSize,
+            int secondsUntilExipred, JSONObject payload) throws IOException, Exception {
+        PreviewContent preview = PreviewContent.create(getContentResolver(), source, maxSize);
+        if (preview == null) {
+            return null;
+        }
+        String uri = store(preview, secondsUntilExipred, null);
+        if (uri != null) {
+            preview.linkFrom(payload, uri);
+        }
         return uri;
     }
 
+    /**
+     * Stores the content now if the network policy allows it, otherwise as soon as the device is
+     * on a network where it does. Use this for large content which is not needed immediately.
+     */
+    public void storeWhenSuitable(StreamableContent source, int secondsUntilExipred,
+            HttpResponseHandler responseHandler, StoreListener listener) throws IOException {
+        DeferredStore store = new DeferredStore(source, secondsUntilExipred, responseHandler,
+                listener, source.getNewStreamLength());
+        mRegistry.add(store, TransferRegistry.QUEUED, false);
+        synchronized (mQueueLock) {
+            TransferPolicy policy = mPolicy;
+            if (mHeld || policy.shouldDefer(store.mLength)
+                    || mRegistry.getRunningCount() >= policy.getMaxParallelTransfers()) {
+                Log.d(LOG_TAG, "deferring store of " + store.mLength + " bytes on " + policy);
+                mDeferred.addLast(store);
+                return;
+            }
+        }
+        startDeferred(store);
+    }
+
     public void cancel(String uri) {
-        mFileCache.cancel(uri);
+        TransferRegistry.Entry entry = mRegistry.get(uri);
+        if (entry instanceof Transfer && mRegistry.finish(entry, TransferRegistry.FAILED)) {
+            Transfer transfer = (Transfer) entry;
+            TransferTracer.end(transfer.mSpan, TransferTracer.OUTCOME_CANCELLED);
+            if (transfer.isPrefetch()) {
+                transfer.getPrefetchPart().delete();
+            }
+        }
+        cancelTransfer(uri);
+        startWaiting();
+    }
+
+    /**
+     * Cancels all transfers, including deferred stores, whose listeners get an
+     * {@link IOException}.
+     */
+    public void cancelAll() {
+        List<DeferredStore> stores;
+        synchronized (mQueueLock) {
+            stores = new ArrayList<DeferredStore>(mDeferred);
+            mDeferred.clear();
+        }
+        for (DeferredStore store : stores) {
+            if (mRegistry.finish(store, TransferRegistry.FAILED)) {
+                store.mListener.onStoreFailed(new IOException("Store cancelled"));
+            }
+        }
+        for (TransferRegistry.Entry entry : mRegistry.getEntries()) {
+            cancel(entry.getUri());
+        }
+    }
+
+    /**
+     * Pauses all running fetches and holds back all waiting transfers until {@link #resumeAll()}.
+     * Running stores are not affected.
+     */
+    public void pauseAll() {
+        List<Transfer> paused;
+        synchronized (mQueueLock) {
+            mHeld = true;
+            paused = pauseRunningFetches();
+        }
+        Log.d(LOG_TAG, "pausing " + paused.size() + " fetches");
+        for (Transfer transfer : paused) {
+            cancelTransfer(transfer.getUri());
+        }
+    }
+
+    public void resumeAll() {
+        synchronized (mQueueLock) {
+            mHeld = false;
+        }
+        startWaiting();
     }
 
     public boolean isOngoing(String uri) {
-        return mFileCache.isOngoing(uri);
+        return mRegistry.isActive(uri);
     }
 
     @Override
     public IBinder onBind(Intent intent) {
         return null;
     }
+
+    // Private Instance Methods ------------------------------------------
+
+    /**
+     * @param urgent
+     *            true to start ahead of other waiting prefetches, as for previews
+     */
+    private boolean prefetch(String uri, boolean urgent) {
+        File file = getPrefetchFile(uri);
+        if (file == null || file.exists() || mRegistry.isActive(uri)) {
+            return false;
+        }
+        mPrefetchDir.mkdirs();
+
+        Transfer transfer = new Transfer(uri, new FileContent(new File(file.getPath() + ".part"),
+                null, mPolicy.getChunkSize()), null, file);
+        if (!mRegistry.add(transfer, TransferRegistry.QUEUED, false)) {
+            return false;
+        }
+        synchronized (mQueueLock) {
+            if (urgent) {
+                addBeforePrefetches(transfer);
+            } else {
+                mQueued.addLast(transfer);
+            }
+        }
+        startWaiting();
+        return true;
+    }
+
+    /** must be called while holding mQueueLock */
+    private void addBeforePrefetches(Transfer transfer) {
+        int index = 0;
+        for (Transfer queued : mQueued) {
+            if (queued.isPrefetch()) {
+                break;
+            }
+            index++;
+        }
+        mQueued.add(index, transfer);
+    }
+
+    /**
+     * Ends a prefetch of the URI, if there is one.
+     * 
+     * @return the ended prefetch, to be passed to {@link #cancelPrefetch(Transfer)}
+     */
+    private Transfer takePrefetch(String uri) {
+        TransferRegistry.Entry entry = mRegistry.get(uri);
+        if (entry instanceof Transfer && ((Transfer) entry).isPrefetch()
+                && mRegistry.finish(entry, TransferRegistry.FAILED)) {
+            return (Transfer) entry;
+        }
+        return null;
+    }
+
+    private void cancelPrefetch(Transfer prefetch) {
+        // drops the callbacks of the cancelled download
+        prefetch.mAttempt.incrementAndGet();
+        cancelTransfer(prefetch.getUri());
+        TransferTracer.end(prefetch.mSpan, TransferTracer.OUTCOME_CANCELLED);
+        prefetch.getPrefetchPart().delete();
+    }
+
+    /**
+     * @return the file the content of the URI is prefetched to or null if hashing is unavailable
+     */
+    private File getPrefetchFile(String uri) {
+        try {
+            return new File(mPrefetchDir, CryptoHelper.toHex(CryptoHelper.md_sha1(uri
+                    .getBytes())));
+        } catch (NoSuchAlgorithmException e) {
+            Log.w(LOG_TAG, "can't prefetch " + uri, e);
+            return null;
+        }
+    }
+
+    private void deleteOldPrefetches() {
+        File[] files = mPrefetchDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - PREFETCH_MAX_AGE;
+        for (File file : files) {
+            if (file.lastModified() < oldest) {
+                file.delete();
+            }
+        }
+    }
+
+    private static void collectFileCacheUris(Object value, String prefix, List<String> previews,
+            List<String> uris) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            for (Iterator<?> it = object.keys(); it.hasNext();) {
+                String key = (String) it.next();
+                if (PreviewContent.KEY_PREVIEW_URI.equals(key)) {
+                    collectFileCacheUris(object.opt(key), prefix, null, previews);
+                } else if (!StreamedPayload.KEY_PAYLOAD_URI.equals(key)) {
+                    // streamed payloads are fetched by the AsyncLinccer itself
+                    collectFileCacheUris(object.opt(key), prefix, previews, uris);
+                }
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            for (int i = 0; i < array.length(); i++) {
+                collectFileCacheUris(array.opt(i), prefix, previews, uris);
+            }
+        } else if (value instanceof String && ((String) value).startsWith(prefix)
+                && !uris.contains(value)) {
+            uris.add((String) value);
+        }
+    }
+
+    private void startFetch(Transfer transfer) {
+        int attempt = transfer.mAttempt.incrementAndGet();
+        if (transfer.mSpan == null) {
+            transfer.mSpan = TransferTracer.begin(TransferTracer.FILECACHE_FETCH);
+        }
+        if (transfer.mResponseHandler == null) {
+            mClient.fetch(transfer.getUri(), transfer.mContent, listenerFor(transfer, attempt));
+        } else {
+            mFileCache.asyncFetch(transfer.getUri(), transfer.mContent, wrap(transfer, attempt));
+        }
+    }
+
+    private void startDeferred(DeferredStore store) {
+        if (!mRegistry.transition(store, TransferRegistry.QUEUED, TransferRegistry.RUNNING)) {
+            // cancelled meanwhile
+            return;
+        }
+        try {
+            String uri = store(store.mSource, store.mSecondsUntilExpired, store.mResponseHandler);
+            // the store is registered on its own by now, so this never makes the service idle
+            mRegistry.transition(store, TransferRegistry.RUNNING, TransferRegistry.DONE);
+            store.mListener.onStoreStarted(uri);
+        } catch (Exception e) {
+            mRegistry.transition(store, TransferRegistry.RUNNING, TransferRegistry.FAILED);
+            store.mListener.onStoreFailed(e);
+        }
+    }
+
+    /**
+     * Starts queued fetches and deferred stores as far as the current policy allows.
+     */
+    private void startWaiting() {
+        List<Transfer> fetches = new ArrayList<Transfer>();
+        List<DeferredStore> stores = new ArrayList<DeferredStore>();
+        synchronized (mQueueLock) {
+            if (mHeld) {
+                return;
+            }
+            TransferPolicy policy = mPolicy;
+            int slots = policy.getMaxParallelTransfers();
+            while (!mQueued.isEmpty() && mRegistry.getRunningCount() < slots) {
+                Transfer transfer = mQueued.removeFirst();
+                int state = transfer.getState();
+                if ((state == TransferRegistry.QUEUED || state == TransferRegistry.PAUSED)
+                        && mRegistry.transition(transfer, state, TransferRegistry.RUNNING)) {
+                    fetches.add(transfer);
+                }
+            }
+            for (Iterator<DeferredStore> it = mDeferred.iterator(); it.hasNext();) {
+                DeferredStore store = it.next();
+                if (mRegistry.getRunningCount() + stores.size() >= slots) {
+                    break;
+                }
+                if (!policy.shouldDefer(store.mLength)) {
+                    it.remove();
+                    stores.add(store);
+                }
+            }
+        }
+        for (Transfer transfer : fetches) {
+            startFetch(transfer);
+        }
+        for (DeferredStore store : stores) {
+            startDeferred(store);
+        }
+    }
+
+    /**
+     * Moves running fetches back to the front of the queue, must be called while holding
+     * mQueueLock.
+     * 
+     * @return the paused fetches, to be cancelled in the filecache
+     */
+    private List<Transfer> pauseRunningFetches() {
+        List<Transfer> paused = new ArrayList<Transfer>();
+        for (TransferRegistry.Entry entry : mRegistry.getEntries()) {
+            if (entry instanceof Transfer && ((Transfer) entry).isFetch()
+                    && mRegistry.transition(entry, TransferRegistry.RUNNING,
+                            TransferRegistry.PAUSED)) {
+                Transfer transfer = (Transfer) entry;
+                transfer.mAttempt.incrementAndGet();
+                paused.add(transfer);
+            }
+        }
+        mQueued.addAll(0, paused);
+        return paused;
+    }
+
+    private void onNetworkChanged() {
+        ConnectivityManager connectivity = (ConnectivityManager) getSystemService(
+                Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivity.getActiveNetworkInfo();
+        TransferPolicy policy = TransferPolicy.forNetwork(network);
+        int networkType = network != null && network.isConnected() ? network.getType() : -1;
+
+        List<Transfer> paused = Collections.emptyList();
+        synchronized (mQueueLock) {
+            if (networkType != mNetworkType) {
+                // fetches can't survive a change of the network, restart them later
+                paused = pauseRunningFetches();
+            }
+            mPolicy = policy;
+            mNetworkType = networkType;
+        }
+        if (mTransport != null) {
+            mTransport.setChunkSize(policy.getChunkSize());
+        }
+
+        Log.d(LOG_TAG, "network policy " + policy + ", pausing " + paused.size() + " fetches");
+        for (Transfer transfer : paused) {
+            cancelTransfer(transfer.getUri());
+        }
+        startWaiting();
+    }
+
+    /**
+     * Passes the end of a transfer to the listener once its URI is known, which for stores may
+     * be after the transfer finished.
+     */
+    private void notifyFinished(Transfer transfer) {
+        TransferListener listener = mTransferListener;
+        String uri = transfer.getUri();
+        if (listener != null && uri != null && transfer.mResult != 0
+                && transfer.mNotified.compareAndSet(false, true)) {
+            listener.onTransferFinished(uri, transfer.mResult > 0);
+        }
+    }
+
+    private void onFinished(Transfer transfer, boolean success) {
+        transfer.mCallbacksDone = true;
+        if (mRegistry.transition(transfer, TransferRegistry.RUNNING,
+                success ? TransferRegistry.DONE : TransferRegistry.FAILED)) {
+            if (transfer.isPrefetch()) {
+                File part = transfer.getPrefetchPart();
+                if (!success || !part.renameTo(transfer.mPrefetchFile)) {
+                    part.delete();
+                }
+            }
+            TransferTracer.end(transfer.mSpan, success ? TransferTracer.OUTCOME_OK
+                    : TransferTracer.OUTCOME_FAILED);
+
+            transfer.mResult = success ? 1 : -1;
+            notifyFinished(transfer);
+        }
+        startWaiting();
+    }
+
+    private TransferCompletionHandler.Listener listenerFor(final Transfer transfer,
+            final int attempt) {
+        return new TransferCompletionHandler.Listener() {
+            public boolean isCurrent() {
+                return transfer.mAttempt.get() == attempt && !transfer.mCallbacksDone;
+            }
+
+            public void onTransferFinished(boolean success) {
+                onFinished(transfer, success);
+            }
+        };
+    }
+
+    private HttpResponseHandler wrap(Transfer transfer, int attempt) {
+        return TransferCompletionHandler.wrap(transfer.mResponseHandler, listenerFor(transfer,
+                attempt));
+    }
+
+    /**
+     * Stops a running transfer in whichever transport runs it.
+     */
+    private void cancelTransfer(String uri) {
+        mFileCache.cancel(uri);
+        if (mTransport != null) {
+            mTransport.cancel(uri);
+        }
+    }
+
+    // Inner Classes -----------------------------------------------------
+
+    /**
+     * A fetch or store handed to this service. Attempts of fetches are counted so callbacks of a
+     * paused attempt can be told apart from the restarted one.
+     */
+    private static class Transfer extends TransferRegistry.Entry {
+
+        private final StreamableContent      mContent;
+        private final HttpResponseHandler    mResponseHandler;
+        private final boolean                mIsFetch;
+        private final AtomicInteger          mAttempt  = new AtomicInteger();
+        private volatile boolean             mCallbacksDone;
+
+        /** 1 if the transfer succeeded, -1 if it failed, 0 while running or if cancelled */
+        private volatile int                 mResult;
+        private final AtomicBoolean          mNotified = new AtomicBoolean();
+        private volatile TransferTracer.Span mSpan;
+
+        /** Where a prefetch puts the content once complete, null for other transfers */
+        private final File                   mPrefetchFile;
+
+        /**
+         * @param uri
+         *            null for stores until asyncStore returned
+         */
+        Transfer(String uri, StreamableContent content, HttpResponseHandler responseHandler,
+                File prefetchFile) {
+            super(uri);
+            mContent = content;
+            mResponseHandler = responseHandler;
+            mIsFetch = uri != null;
+            mPrefetchFile = prefetchFile;
+        }
+
+        boolean isFetch() {
+            return mIsFetch;
+        }
+
+        boolean isPrefetch() {
+            return mPrefetchFile != null;
+        }
+
+        /** @return the file a prefetch downloads into */
+        File getPrefetchPart() {
+            return ((FileContent) mContent).getFile();
+        }
+    }
+
+    /**
+     * A store waiting for a better network, registered without a URI.
+     */
+    private static class DeferredStore extends TransferRegistry.Entry {
+
+        private final StreamableContent   mSource;
+        private final int                 mSecondsUntilExpired;
+        private final HttpResponseHandler mResponseHandler;
+        private final StoreListener       mListener;
+        private final long                mLength;
+
+        DeferredStore(StreamableContent source, int secondsUntilExpired,
+                HttpResponseHandler responseHandler, StoreListener listener, long length) {
+            super(null);
+            mSource = source;
+            mSecondsUntilExpired = secondsUntilExpired;
+            mResponseHandler = responseHandler;
+            mListener = listener;
+            mLength = length;
+        }
+    }
 }
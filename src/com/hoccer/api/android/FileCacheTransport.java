@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.InputStreamEntity;
+
+import android.util.Log;
+
+import com.hoccer.data.StreamableContent;
+
+/**
+ * A {@link FileCacheClient} sending the filecache v3 requests itself through the connections of
+ * an {@link AndroidClientConfig}: stores are a PUT of the content to a new URI below the
+ * config's filecache server, fetches a GET of the URI. Each transfer runs on its own daemon
+ * thread; cancelling aborts the request.
+ */
+class FileCacheTransport implements FileCacheClient {
+
+    // Constants ---------------------------------------------------------
+
+    private static final String          LOG_TAG   = "FileCacheTransport";
+
+    private static final ExecutorService TRANSFERS = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, LOG_TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Instance Fields ---------------------------------------------------
+
+    private final AndroidClientConfig                          mConfig;
+    private final HttpClient                                   mClient;
+
+    /** Running requests by URI, so they can be aborted */
+    private final ConcurrentHashMap<String, HttpUriRequest>    mRunning   =
+            new ConcurrentHashMap<String, HttpUriRequest>();
+
+    private volatile int                                       mChunkSize =
+            TransferPolicy.WIFI.getChunkSize();
+
+    // Constructors ------------------------------------------------------
+
+    FileCacheTransport(AndroidClientConfig config, HttpClient client) {
+
+        mConfig = config;
+        mClient = client;
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    public String store(StreamableContent source, int secondsUntilExpired,
+            TransferCompletionHandler.Listener listener) throws IOException {
+
+        String uri = mConfig.getFileCacheServer() + "/" + UUID.randomUUID();
+        HttpPut request = new HttpPut(mConfig.signUri(uri + "?expires_in="
+                + secondsUntilExpired));
+
+        InputStream in = source.openNewInputStream();
+        InputStreamEntity entity = new InputStreamEntity(in, source.getNewStreamLength());
+        entity.setContentType(source.getContentType());
+        request.setEntity(entity);
+
+        start(uri, request, null, in, listener);
+        return uri;
+    }
+
+    public void fetch(String uri, StreamableContent sink,
+            TransferCompletionHandler.Listener listener) {
+
+        start(uri, new HttpGet(mConfig.signUri(uri)), sink, null, listener);
+    }
+
+    public void cancel(String uri) {
+
+        HttpUriRequest request = mRunning.remove(uri);
+        if (request != null) {
+            request.abort();
+        }
+    }
+
+    // Package Instance Methods ------------------------------------------
+
+    /**
+     * @param chunkSize
+     *            buffer size for copying fetched content, see
+     *            {@link TransferPolicy#getChunkSize()}
+     */
+    void setChunkSize(int chunkSize) {
+
+        mChunkSize = chunkSize;
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    /**
+     * @param sink
+     *            where the response body goes, null for stores
+     * @param source
+     *            the stream the request body is read from, closed when the transfer ends
+     */
+    private void start(final String uri, final HttpUriRequest request,
+            final StreamableContent sink, final InputStream source,
+            final TransferCompletionHandler.Listener listener) {
+
+        mRunning.put(uri, request);
+        TRANSFERS.execute(new Runnable() {
+            public void run() {
+                boolean success = false;
+                try {
+                    success = transfer(request, sink);
+                    if (!success) {
+                        Log.w(LOG_TAG, request.getMethod() + " " + uri + " failed");
+                    }
+                } catch (IOException e) {
+                    if (!request.isAborted()) {
+                        Log.w(LOG_TAG, request.getMethod() + " " + uri + " failed: " + e);
+                    }
+                } finally {
+                    mRunning.remove(uri, request);
+                    closeQuietly(source);
+                }
+
+                if (listener.isCurrent()) {
+                    listener.onTransferFinished(success);
+                }
+            }
+        });
+    }
+
+    private boolean transfer(HttpUriRequest request, StreamableContent sink) throws IOException {
+
+        HttpResponse response = mClient.execute(request);
+        HttpEntity entity = response.getEntity();
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (status < 200 || status >= 300) {
+                return false;
+            }
+            if (sink == null || entity == null) {
+                return true;
+            }
+
+            Header type = entity.getContentType();
+            if (type != null) {
+                sink.setContentType(type.getValue());
+            }
+            copy(entity.getContent(), sink.openNewOutputStream());
+            return true;
+
+        } finally {
+            if (entity != null) {
+                // releases the connection back to the pool
+                entity.consumeContent();
+            }
+        }
+    }
+
+    private void copy(InputStream in, OutputStream out) throws IOException {
+
+        try {
+            byte[] buffer = new byte[mChunkSize];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    // Private Static Methods --------------------------------------------
+
+    private static void closeQuietly(InputStream in) {
+
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            // nothing left to read from it anyway
+        }
+    }
+}
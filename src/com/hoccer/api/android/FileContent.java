@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.hoccer.data.GenericStreamableContent;
+
+/**
+ * A local file as filecache content, used for payloads and prefetched downloads in the cache
+ * directory.
+ */
+class FileContent extends GenericStreamableContent {
+
+    // Instance Fields ---------------------------------------------------
+
+    private final File mFile;
+
+    private final int  mBufferSize;
+
+    // Constructors ------------------------------------------------------
+
+    /**
+     * @param bufferSize
+     *            size of the buffers around the file streams, usually the chunk size of the
+     *            current {@link TransferPolicy}
+     */
+    FileContent(File file, String contentType, int bufferSize) {
+
+        mFile = file;
+        mBufferSize = bufferSize;
+        setContentType(contentType);
+        setFilename(file.getName());
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    @Override
+    public InputStream openRawInputStream() throws IOException {
+
+        return new BufferedInputStream(new FileInputStream(mFile), mBufferSize);
+    }
+
+    @Override
+    public OutputStream openRawOutputStream() throws IOException {
+
+        return new BufferedOutputStream(new FileOutputStream(mFile), mBufferSize);
+    }
+
+    @Override
+    public InputStream openNewInputStream() throws IOException {
+
+        return openRawInputStream();
+    }
+
+    @Override
+    public OutputStream openNewOutputStream() throws IOException {
+
+        return openRawOutputStream();
+    }
+
+    @Override
+    public long getRawStreamLength() throws IOException {
+
+        return mFile.length();
+    }
+
+    @Override
+    public long getNewStreamLength() throws IOException {
+
+        return getRawStreamLength();
+    }
+
+    public File getFile() {
+
+        return mFile;
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import android.content.Context;
+import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
+
+/**
+ * A thread safe pool of persistent HTTP connections meant to be shared by all services of an app
+ * (see {@link AndroidClientConfig#setConnectionPool(HttpConnectionPool)}). Connections are kept
+ * alive between requests, limited per host, evicted when idle for too long, and TLS sessions are
+ * cached persistently so even new connections can resume a session instead of doing a full
+ * handshake.
+ */
+public class HttpConnectionPool {
+
+    // Constants ---------------------------------------------------------
+
+    private static final String LOG_TAG                   = "HttpConnectionPool";
+
+    public static final int     DEFAULT_MAX_TOTAL         = 20;
+    public static final int     DEFAULT_MAX_PER_ROUTE     = 6;
+    public static final long    DEFAULT_KEEP_ALIVE_MILLIS = 30 * 1000;
+
+    /** Long enough for the share and receive long-polls */
+    private static final int    SO_TIMEOUT                = 70 * 1000;
+    private static final int    CONNECT_TIMEOUT           = 10 * 1000;
+
+    // Instance Fields ---------------------------------------------------
+
+    private final CountingConnManager mConnManager;
+    private final DefaultHttpClient   mHttpClient;
+    private final long                mKeepAliveMillis;
+
+    private final AtomicLong          mLeased  = new AtomicLong();
+    private final AtomicLong          mCreated = new AtomicLong();
+
+    private Thread                    mEvictor;
+
+    // Constructors ------------------------------------------------------
+
+    public HttpConnectionPool(Context context) {
+
+        this(context, DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_KEEP_ALIVE_MILLIS);
+    }
+
+    /**
+     * @param keepAliveMillis
+     *            how long idle connections are kept if the server doesn't say otherwise
+     */
+    public HttpConnectionPool(Context context, int maxTotal, int maxPerRoute,
+            long keepAliveMillis) {
+
+        mKeepAliveMillis = keepAliveMillis;
+
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT);
+        HttpConnectionParams.setSoTimeout(params, SO_TIMEOUT);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        ConnManagerParams.setMaxTotalConnections(params, maxTotal);
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxPerRoute));
+
+        SchemeRegistry schemes = new SchemeRegistry();
+        schemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        schemes.register(new Scheme("https", SSLCertificateSocketFactory.getHttpSocketFactory(
+                CONNECT_TIMEOUT, new SSLSessionCache(context.getApplicationContext())), 443));
+
+        mConnManager = new CountingConnManager(params, schemes);
+        mHttpClient = new DefaultHttpClient(mConnManager, params);
+        mHttpClient.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+
+            private final ConnectionKeepAliveStrategy mServerStrategy =
+                    new DefaultConnectionKeepAliveStrategy();
+
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = mServerStrategy.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : mKeepAliveMillis;
+            }
+        });
+
+        startEvictor();
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    public HttpClient getHttpClient() {
+
+        return mHttpClient;
+    }
+
+    public Stats getStats() {
+
+        return new Stats(mLeased.get(), mCreated.get(), mConnManager.getConnectionsInPool());
+    }
+
+    public synchronized void shutdown() {
+
+        if (mEvictor != null) {
+            mEvictor.interrupt();
+            mEvictor = null;
+        }
+        mConnManager.shutdown();
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private synchronized void startEvictor() {
+
+        mEvictor = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        Thread.sleep(mKeepAliveMillis / 2 + 1);
+                        mConnManager.closeExpiredConnections();
+                        mConnManager.closeIdleConnections(mKeepAliveMillis, TimeUnit.MILLISECONDS);
+                    }
+                } catch (InterruptedException e) {
+                    // shut down
+                }
+            }
+        }, LOG_TAG);
+        mEvictor.setDaemon(true);
+        mEvictor.start();
+    }
+
+    // Inner Classes -----------------------------------------------------
+
+    /**
+     * Connection reuse counters at the time of the call.
+     */
+    public static class Stats {
+
+        private final long mLeased;
+        private final long mCreated;
+        private final int  mIdle;
+
+        private Stats(long leased, long created, int idle) {
+
+            mLeased = leased;
+            mCreated = created;
+            mIdle = idle;
+        }
+
+        /** @return how many requests asked the pool for a connection */
+        public long getLeased() {
+
+            return mLeased;
+        }
+
+        /** @return how many new connections had to be opened */
+        public long getCreated() {
+
+            return mCreated;
+        }
+
+        /** @return how many requests were served by a kept-alive connection */
+        public long getReused() {
+
+            return Math.max(0, mLeased - mCreated);
+        }
+
+        /** @return connections currently held by the pool, idle or leased */
+        public int getPooled() {
+
+            return mIdle;
+        }
+
+        @Override
+        public String toString() {
+
+            return "leased=" + mLeased + " created=" + mCreated + " reused=" + getReused()
+                    + " pooled=" + mIdle;
+        }
+    }
+
+    private class CountingConnManager extends ThreadSafeClientConnManager {
+
+        CountingConnManager(HttpParams params, SchemeRegistry schemes) {
+
+            super(params, schemes);
+        }
+
+        @Override
+        public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+
+            mLeased.incrementAndGet();
+            return super.requestConnection(route, state);
+        }
+
+        @Override
+        protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schemes) {
+
+            return new DefaultClientConnectionOperator(schemes) {
+                @Override
+                public OperatedClientConnection createConnection() {
+                    mCreated.incrementAndGet();
+                    return super.createConnection();
+                }
+            };
+        }
+    }
+}
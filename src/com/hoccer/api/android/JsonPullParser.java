@@ -0,0 +1,534 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reads JSON token by token from a character stream with a fixed size buffer, so large payloads
+ * can be processed without holding them in memory. Only the text of the current token is kept;
+ * small parts of a document can still be turned into {@link JSONObject}s with
+ * {@link #readValue()}.
+ * 
+ * <pre>
+ * parser.next(); // BEGIN_OBJECT
+ * while (parser.next() == JsonPullParser.NAME) {
+ *     if (&quot;contacts&quot;.equals(parser.getText())
+ *             &amp;&amp; parser.next() == JsonPullParser.BEGIN_ARRAY) {
+ *         while (parser.next() != JsonPullParser.END_ARRAY) {
+ *             addContact((JSONObject) parser.readValue());
+ *         }
+ *     } else {
+ *         parser.next();
+ *         parser.skipValue();
+ *     }
+ * }
+ * </pre>
+ */
+public class JsonPullParser {
+
+    // Constants ---------------------------------------------------------
+
+    public static final int  BEGIN_OBJECT      = 1;
+    public static final int  END_OBJECT        = 2;
+    public static final int  BEGIN_ARRAY       = 3;
+    public static final int  END_ARRAY         = 4;
+    public static final int  NAME              = 5;
+    public static final int  STRING            = 6;
+    public static final int  NUMBER            = 7;
+    public static final int  BOOLEAN           = 8;
+    public static final int  NULL              = 9;
+    public static final int  END_DOCUMENT      = 10;
+
+    private static final int EMPTY_DOCUMENT    = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT      = 2;
+    private static final int NONEMPTY_OBJECT   = 3;
+    private static final int DANGLING_NAME     = 4;
+    private static final int EMPTY_ARRAY       = 5;
+    private static final int NONEMPTY_ARRAY    = 6;
+
+    private static final int BUFFER_SIZE       = 8192;
+
+    // Instance Fields ---------------------------------------------------
+
+    private final Reader        mIn;
+    private final char[]        mBuffer = new char[BUFFER_SIZE];
+    private int                 mPos;
+    private int                 mLimit;
+
+    /** Characters consumed before the buffer, for error messages */
+    private long                mOffset;
+
+    /** Contexts of the open objects and arrays, the document at index 0 */
+    private int[]               mStack  = new int[16];
+    private int                 mDepth  = 1;
+
+    private int                 mToken;
+    private final StringBuilder mText   = new StringBuilder();
+
+    // Constructors ------------------------------------------------------
+
+    public JsonPullParser(Reader in) {
+
+        if (in == null) {
+            throw new IllegalArgumentException("Reader can't be null");
+        }
+        mIn = in;
+        mStack[0] = EMPTY_DOCUMENT;
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    /**
+     * Advances to the next token.
+     * 
+     * @return the token type, {@link #END_DOCUMENT} after the top level value
+     * @throws IOException
+     *             if reading fails or the input is not valid JSON
+     */
+    public int next() throws IOException {
+
+        mText.setLength(0);
+        int c = nextNonWhitespace();
+
+        switch (peek()) {
+            case EMPTY_DOCUMENT:
+                replaceTop(NONEMPTY_DOCUMENT);
+                return mToken = readValueStart(c);
+
+            case NONEMPTY_DOCUMENT:
+                if (c != -1) {
+                    throw syntaxError("Unexpected data after the document");
+                }
+                return mToken = END_DOCUMENT;
+
+            case EMPTY_ARRAY:
+                if (c == ']') {
+                    mDepth--;
+                    return mToken = END_ARRAY;
+                }
+                replaceTop(NONEMPTY_ARRAY);
+                return mToken = readValueStart(c);
+
+            case NONEMPTY_ARRAY:
+                if (c == ']') {
+                    mDepth--;
+                    return mToken = END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                return mToken = readValueStart(nextNonWhitespace());
+
+            case EMPTY_OBJECT:
+                if (c == '}') {
+                    mDepth--;
+                    return mToken = END_OBJECT;
+                }
+                return mToken = readName(c);
+
+            case NONEMPTY_OBJECT:
+                if (c == '}') {
+                    mDepth--;
+                    return mToken = END_OBJECT;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or '}'");
+                }
+                return mToken = readName(nextNonWhitespace());
+
+            default: // DANGLING_NAME
+                if (c != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                replaceTop(NONEMPTY_OBJECT);
+                return mToken = readValueStart(nextNonWhitespace());
+        }
+    }
+
+    /**
+     * @return the type of the token {@link #next()} returned last, 0 before the first call
+     */
+    public int getToken() {
+
+        return mToken;
+    }
+
+    /**
+     * @return the name, string value or number of the current token as text, "true" or "false"
+     *         for booleans and null for all other tokens
+     */
+    public String getText() {
+
+        switch (mToken) {
+            case NAME:
+            case STRING:
+            case NUMBER:
+            case BOOLEAN:
+                return mText.toString();
+            default:
+                return null;
+        }
+    }
+
+    public boolean getBoolean() {
+
+        assertToken(BOOLEAN);
+        return mText.charAt(0) == 't';
+    }
+
+    /**
+     * @throws NumberFormatException
+     *             if the current number has a fraction or exponent or doesn't fit into a long
+     */
+    public long getLong() {
+
+        assertToken(NUMBER);
+        return Long.parseLong(mText.toString());
+    }
+
+    public double getDouble() {
+
+        assertToken(NUMBER);
+        return Double.parseDouble(mText.toString());
+    }
+
+    /**
+     * Skips the value starting with the current token: after {@link #BEGIN_OBJECT} or
+     * {@link #BEGIN_ARRAY} the parser advances to the matching end token, for all other tokens
+     * this does nothing.
+     */
+    public void skipValue() throws IOException {
+
+        if (mToken != BEGIN_OBJECT && mToken != BEGIN_ARRAY) {
+            return;
+        }
+        int depth = mDepth - 1;
+        while (mDepth > depth) {
+            if (next() == END_DOCUMENT) {
+                throw syntaxError("Unexpected end of document");
+            }
+        }
+    }
+
+    /**
+     * Reads the value starting with the current token into memory.
+     * 
+     * @return a {@link JSONObject}, {@link JSONArray}, String, Long, Double, Boolean or
+     *         {@link JSONObject#NULL}
+     */
+    public Object readValue() throws IOException {
+
+        switch (mToken) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                while (next() == NAME) {
+                    String name = mText.toString();
+                    next();
+                    try {
+                        object.put(name, readValue());
+                    } catch (JSONException e) {
+                        throw syntaxError(e.getMessage());
+                    }
+                }
+                return object;
+
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                while (next() != END_ARRAY) {
+                    array.put(readValue());
+                }
+                return array;
+
+            case STRING:
+                return mText.toString();
+
+            case NUMBER:
+                String number = mText.toString();
+                if (number.indexOf('.') < 0 && number.indexOf('e') < 0
+                        && number.indexOf('E') < 0) {
+                    try {
+                        return Long.valueOf(number);
+                    } catch (NumberFormatException e) {
+                        // too large for a long
+                    }
+                }
+                return Double.valueOf(number);
+
+            case BOOLEAN:
+                return Boolean.valueOf(getBoolean());
+
+            case NULL:
+                return JSONObject.NULL;
+
+            default:
+                throw new IllegalStateException("No value starts at token " + mToken);
+        }
+    }
+
+    /**
+     * @return the number of nested objects and arrays the parser is in
+     */
+    public int getDepth() {
+
+        return mDepth - 1;
+    }
+
+    public void close() throws IOException {
+
+        mIn.close();
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private int peek() {
+
+        return mStack[mDepth - 1];
+    }
+
+    private void replaceTop(int context) {
+
+        mStack[mDepth - 1] = context;
+    }
+
+    private void push(int context) {
+
+        if (mDepth == mStack.length) {
+            int[] stack = new int[mStack.length * 2];
+            System.arraycopy(mStack, 0, stack, 0, mDepth);
+            mStack = stack;
+        }
+        mStack[mDepth++] = context;
+    }
+
+    private void assertToken(int token) {
+
+        if (mToken != token) {
+            throw new IllegalStateException("Current token is " + mToken + ", not " + token);
+        }
+    }
+
+    private int readName(int c) throws IOException {
+
+        if (c != '"') {
+            throw syntaxError("Expected a name");
+        }
+        readString();
+        replaceTop(DANGLING_NAME);
+        return NAME;
+    }
+
+    private int readValueStart(int c) throws IOException {
+
+        switch (c) {
+            case '{':
+                push(EMPTY_OBJECT);
+                return BEGIN_OBJECT;
+            case '[':
+                push(EMPTY_ARRAY);
+                return BEGIN_ARRAY;
+            case '"':
+                readString();
+                return STRING;
+            case 't':
+                readLiteral("true");
+                return BOOLEAN;
+            case 'f':
+                readLiteral("false");
+                return BOOLEAN;
+            case 'n':
+                readLiteral("null");
+                mText.setLength(0);
+                return NULL;
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber(c);
+                    return NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void readString() throws IOException {
+
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            }
+            if (c == -1) {
+                throw syntaxError("Unterminated string");
+            }
+            if (c != '\\') {
+                mText.append((char) c);
+                continue;
+            }
+
+            c = read();
+            switch (c) {
+                case 'b':
+                    mText.append('\b');
+                    break;
+                case 'f':
+                    mText.append('\f');
+                    break;
+                case 'n':
+                    mText.append('\n');
+                    break;
+                case 'r':
+                    mText.append('\r');
+                    break;
+                case 't':
+                    mText.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw syntaxError("Bad unicode escape");
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    mText.append((char) code);
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    mText.append((char) c);
+                    break;
+                default:
+                    throw syntaxError("Bad escape");
+            }
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+
+        mText.append(literal.charAt(0));
+        for (int i = 1; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw syntaxError("Expected " + literal);
+            }
+            mText.append(literal.charAt(i));
+        }
+    }
+
+    /**
+     * Reads a number as specified by RFC 4627: an optional minus, an integer part without leading
+     * zeros, an optional fraction and an optional exponent, each with at least one digit. Anything
+     * else is a syntax error, so {@link #getDouble()} and {@link #readValue()} can't fail later.
+     */
+    private void readNumber(int first) throws IOException {
+
+        int c = first;
+        if (c == '-') {
+            mText.append('-');
+            c = read();
+            if (c < '0' || c > '9') {
+                throw syntaxError("Expected a digit after '-'");
+            }
+        }
+        mText.append((char) c);
+        if (c != '0') {
+            readDigits();
+        }
+
+        if (peekChar() == '.') {
+            mText.append((char) read());
+            if (readDigits() == 0) {
+                throw syntaxError("Expected a digit after '.'");
+            }
+        }
+
+        c = peekChar();
+        if (c == 'e' || c == 'E') {
+            mText.append((char) read());
+            c = peekChar();
+            if (c == '+' || c == '-') {
+                mText.append((char) read());
+            }
+            if (readDigits() == 0) {
+                throw syntaxError("Expected a digit in the exponent");
+            }
+        }
+    }
+
+    /** @return the number of digits appended to the current token */
+    private int readDigits() throws IOException {
+
+        int count = 0;
+        for (int c = peekChar(); c >= '0' && c <= '9'; c = peekChar()) {
+            mText.append((char) c);
+            mPos++;
+            count++;
+        }
+        return count;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    /** @return the next character without consuming it or -1 at the end of the input */
+    private int peekChar() throws IOException {
+
+        if (mPos == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPos];
+    }
+
+    /** @return the next character or -1 at the end of the input */
+    private int read() throws IOException {
+
+        if (mPos == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPos++];
+    }
+
+    private boolean fill() throws IOException {
+
+        mOffset += mLimit;
+        mPos = 0;
+        mLimit = 0;
+        int count = mIn.read(mBuffer, 0, mBuffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        mLimit = count;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+
+        return new IOException(message + " at character " + (mOffset + mPos));
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Writes JSON token by token to a character stream, so large payloads never have to exist as a
+ * {@link JSONObject} tree or a String. Commas and colons are inserted automatically; calls which
+ * would produce invalid JSON throw an {@link IllegalStateException}.
+ * 
+ * <pre>
+ * writer.beginObject();
+ * writer.name(&quot;contacts&quot;).beginArray();
+ * for (Contact contact : contacts) {
+ *     writer.beginObject().name(&quot;name&quot;).value(contact.getName()).endObject();
+ * }
+ * writer.endArray();
+ * writer.endObject();
+ * </pre>
+ */
+public class JsonStreamWriter {
+
+    // Constants ---------------------------------------------------------
+
+    private static final int EMPTY_DOCUMENT    = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT      = 2;
+    private static final int NONEMPTY_OBJECT   = 3;
+    private static final int DANGLING_NAME     = 4;
+    private static final int EMPTY_ARRAY       = 5;
+    private static final int NONEMPTY_ARRAY    = 6;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // Instance Fields ---------------------------------------------------
+
+    private final Writer mOut;
+
+    /** Contexts of the open objects and arrays, the document at index 0 */
+    private int[]        mStack = new int[16];
+    private int          mDepth = 1;
+
+    // Constructors ------------------------------------------------------
+
+    public JsonStreamWriter(Writer out) {
+
+        if (out == null) {
+            throw new IllegalArgumentException("Writer can't be null");
+        }
+        mOut = out;
+        mStack[0] = EMPTY_DOCUMENT;
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    public JsonStreamWriter beginObject() throws IOException {
+
+        beforeValue();
+        push(EMPTY_OBJECT);
+        mOut.write('{');
+        return this;
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+
+        int context = peek();
+        if (context != EMPTY_OBJECT && context != NONEMPTY_OBJECT) {
+            throw new IllegalStateException("No object to end");
+        }
+        mDepth--;
+        mOut.write('}');
+        return this;
+    }
+
+    public JsonStreamWriter beginArray() throws IOException {
+
+        beforeValue();
+        push(EMPTY_ARRAY);
+        mOut.write('[');
+        return this;
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+
+        int context = peek();
+        if (context != EMPTY_ARRAY && context != NONEMPTY_ARRAY) {
+            throw new IllegalStateException("No array to end");
+        }
+        mDepth--;
+        mOut.write(']');
+        return this;
+    }
+
+    public JsonStreamWriter name(String name) throws IOException {
+
+        if (name == null) {
+            throw new IllegalArgumentException("Name can't be null");
+        }
+
+        int context = peek();
+        if (context == NONEMPTY_OBJECT) {
+            mOut.write(',');
+        } else if (context != EMPTY_OBJECT) {
+            throw new IllegalStateException("Names are only allowed inside objects");
+        }
+        mStack[mDepth - 1] = DANGLING_NAME;
+        writeString(name);
+        mOut.write(':');
+        return this;
+    }
+
+    public JsonStreamWriter value(String value) throws IOException {
+
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonStreamWriter value(long value) throws IOException {
+
+        beforeValue();
+        mOut.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(double value) throws IOException {
+
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("JSON can't represent " + value);
+        }
+        beforeValue();
+        mOut.write(Double.toString(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(boolean value) throws IOException {
+
+        beforeValue();
+        mOut.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonStreamWriter nullValue() throws IOException {
+
+        beforeValue();
+        mOut.write("null");
+        return this;
+    }
+
+    /**
+     * Writes a small, already built value: a {@link JSONObject}, {@link JSONArray}, String,
+     * Number, Boolean, null or {@link JSONObject#NULL}.
+     */
+    public JsonStreamWriter value(Object value) throws IOException {
+
+        if (value == null || value == JSONObject.NULL) {
+            return nullValue();
+        }
+        if (value instanceof String) {
+            return value((String) value);
+        }
+        if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(((Number) value).doubleValue());
+        }
+        if (value instanceof Number) {
+            return value(((Number) value).longValue());
+        }
+        if (value instanceof JSONObject || value instanceof JSONArray) {
+            beforeValue();
+            mOut.write(value.toString());
+            return this;
+        }
+        throw new IllegalArgumentException("Can't write " + value.getClass().getName());
+    }
+
+    public void flush() throws IOException {
+
+        mOut.flush();
+    }
+
+    /**
+     * Closes the underlying writer.
+     * 
+     * @throws IllegalStateException
+     *             if the document is incomplete
+     */
+    public void close() throws IOException {
+
+        mOut.close();
+        if (mDepth > 1 || peek() != NONEMPTY_DOCUMENT) {
+            throw new IllegalStateException("Incomplete document");
+        }
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private int peek() {
+
+        return mStack[mDepth - 1];
+    }
+
+    private void push(int context) {
+
+        if (mDepth == mStack.length) {
+            int[] stack = new int[mStack.length * 2];
+            System.arraycopy(mStack, 0, stack, 0, mDepth);
+            mStack = stack;
+        }
+        mStack[mDepth++] = context;
+    }
+
+    private void beforeValue() throws IOException {
+
+        switch (peek()) {
+            case EMPTY_DOCUMENT:
+                mStack[mDepth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case EMPTY_ARRAY:
+                mStack[mDepth - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                mOut.write(',');
+                break;
+            case DANGLING_NAME:
+                mStack[mDepth - 1] = NONEMPTY_OBJECT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                throw new IllegalStateException("A JSON document has only one top level value");
+            default:
+                throw new IllegalStateException("Values inside objects need a name");
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+
+        mOut.write('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String escaped;
+            if (c == '"') {
+                escaped = "\\\"";
+            } else if (c == '\\') {
+                escaped = "\\\\";
+            } else if (c == '\n') {
+                escaped = "\\n";
+            } else if (c == '\r') {
+                escaped = "\\r";
+            } else if (c == '\t') {
+                escaped = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                escaped = "\\u" + HEX[c >> 12] + HEX[(c >> 8) & 0xf] + HEX[(c >> 4) & 0xf]
+                        + HEX[c & 0xf];
+            } else {
+                continue;
+            }
+            mOut.write(value, start, i - start);
+            mOut.write(escaped);
+            start = i + 1;
+        }
+        mOut.write(value, start, length - start);
+        mOut.write('"');
+    }
+}
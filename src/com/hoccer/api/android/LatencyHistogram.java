@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets in the style of HdrHistogram: every power of
+ * two is split into {@link #SUB_BUCKETS} linear sub-buckets, so recorded values keep a relative
+ * precision of about 12% over the whole range. Values are in microseconds.
+ */
+public class LatencyHistogram {
+
+    // Constants ---------------------------------------------------------
+
+    private static final int  SUB_BUCKET_BITS = 3;
+    private static final int  SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+
+    /** Values of 2^MAX_EXPONENT micros (about 76 hours) and above share the last bucket */
+    private static final int  MAX_EXPONENT    = 38;
+
+    private static final int  BUCKET_COUNT    = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    // Instance Fields ---------------------------------------------------
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong      mSum     = new AtomicLong();
+    private final AtomicLong      mMax     = new AtomicLong();
+
+    // Public Instance Methods -------------------------------------------
+
+    public void record(long micros) {
+
+        if (micros < 0) {
+            micros = 0;
+        }
+
+        mBuckets.incrementAndGet(indexOf(micros));
+        mSum.addAndGet(micros);
+
+        long max;
+        do {
+            max = mMax.get();
+        } while (micros > max && !mMax.compareAndSet(max, micros));
+    }
+
+    public Snapshot snapshot() {
+
+        long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+            count += buckets[i];
+        }
+        return new Snapshot(buckets, count, mSum.get(), mMax.get());
+    }
+
+    // Private Static Methods --------------------------------------------
+
+    private static int indexOf(long value) {
+
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value which is counted in the given bucket
+     */
+    private static long highestValueOf(int index) {
+
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    // Inner Classes -----------------------------------------------------
+
+    /**
+     * Immutable copy of a histogram's state. Buckets are copied one by one without locking, so
+     * the count may include values recorded while the snapshot was taken.
+     */
+    public static class Snapshot {
+
+        private final long[] mBuckets;
+        private final long   mCount;
+        private final long   mSum;
+        private final long   mMax;
+
+        private Snapshot(long[] buckets, long count, long sum, long max) {
+
+            mBuckets = buckets;
+            mCount = count;
+            mSum = sum;
+            mMax = max;
+        }
+
+        public long getCount() {
+
+            return mCount;
+        }
+
+        public long getMax() {
+
+            return mMax;
+        }
+
+        public long getMean() {
+
+            return mCount == 0 ? 0 : mSum / mCount;
+        }
+
+        /**
+         * @param percentile
+         *            between 0 and 100
+         * @return an upper bound of the value below which the given percentage of recorded values
+         *         fall, or 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+
+            if (mCount == 0) {
+                return 0;
+            }
+
+            long threshold = (long) Math.ceil(mCount * percentile / 100.0);
+            if (threshold < 1) {
+                threshold = 1;
+            }
+
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= threshold) {
+                    return Math.min(highestValueOf(i), mMax);
+                }
+            }
+            return mMax;
+        }
+    }
+}
@@ -16,10 +16,16 @@ package com.hoccer.api.android;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.http.client.ClientProtocolException;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.location.Address;
 import android.location.Geocoder;
 import android.location.Location;
@@ -27,6 +33,7 @@ import android.location.LocationListener;
 import android.location.LocationManager;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
+import android.os.Looper;
 import android.util.Log;
 
 import com.hoccer.api.UpdateException;
@@ -35,8 +42,20 @@ public class LinccLocationManager implements LocationListener {
 
     private static final String   UNKNOWN_LOCATION_TEXT = "You can not hoc without a location";
 
-    private final LocationManager mLocationManager;
-    private final WifiManager     mWifiManager;
+    private static final String   LOG_TAG               = LinccLocationManager.class.getSimpleName();
+
+    /** How long a warm-up waits for fresh Wi-Fi scan results and a location fix */
+    private static final long     WARM_UP_TIMEOUT       = 3000;
+
+    /** Warm-ups requested within this time after the last refresh are skipped */
+    private static final long     WARM_UP_INTERVAL      = 10000;
+
+    /** System services, looked up by {@link #initialize()} */
+    private LocationManager       mLocationManager;
+    private WifiManager           mWifiManager;
+
+    /** Written last by {@link #initialize()}, publishes the services */
+    private volatile boolean      mInitialized;
 
     private final Context         mContext;
 
@@ -44,18 +63,43 @@ public class LinccLocationManager implements LocationListener {
     private final Updateable      mUpdater;
 
     // TODO this is a temporary workaround - normally we shouldn't reference the network provider direclty
-    private final boolean mNetworkProviderAvailable;
+    private boolean mNetworkProviderAvailable;
+
+    private final AtomicBoolean   mWarmingUp            = new AtomicBoolean();
 
+    /** Time of the last successful environment submission */
+    private volatile long         mLastRefresh;
+
+    /**
+     * Cheap enough for the main thread: the system services are looked up on first use, or ahead
+     * of it by {@link #initialize()}.
+     */
     public LinccLocationManager(Context pContext, AsyncLinccer linccer, Updateable updater) {
         mContext = pContext;
 
         mLinccer = linccer;
         mUpdater = updater;
+    }
 
-        mLocationManager = (LocationManager) pContext.getSystemService(Context.LOCATION_SERVICE);
-        mWifiManager = (WifiManager) pContext.getSystemService(Context.WIFI_SERVICE);
+    /**
+     * Looks up the location and Wi-Fi services and the available providers unless already done.
+     * Every method needing them calls this; call it from a background thread, e.g. through
+     * {@link BackgroundInitializer}, to keep the lookups off the main thread.
+     */
+    public void initialize() {
+        if (mInitialized) {
+            return;
+        }
+        synchronized (this) {
+            if (mInitialized) {
+                return;
+            }
+            mLocationManager = (LocationManager) mContext.getSystemService(Context.LOCATION_SERVICE);
+            mWifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
 
-        mNetworkProviderAvailable = mLocationManager.getAllProviders().contains(LocationManager.NETWORK_PROVIDER);
+            mNetworkProviderAvailable = mLocationManager.getAllProviders().contains(LocationManager.NETWORK_PROVIDER);
+            mInitialized = true;
+        }
     }
 
     public Context getContext() {
@@ -67,7 +111,8 @@ public class LinccLocationManager implements LocationListener {
     }
 
     public void refreshLocation() throws UpdateException, ClientProtocolException, IOException {
-        mLinccer.autoSubmitEnvironmentChanges(false);
+        initialize();
+        mLinccer.setAutoSubmitEnvironment(false);
 
         mLinccer.onWifiScanResults(mWifiManager.getScanResults());
         Location location;
@@ -80,14 +125,82 @@ public class LinccLocationManager implements LocationListener {
         if (location != null)
             mLinccer.onGpsChanged(location);
 
-        mLinccer.submitEnvironment();
+        TransferTracer.Span span = TransferTracer.begin(TransferTracer.ENVIRONMENT);
+        long start = System.nanoTime();
+        int outcome = TransferTracer.OUTCOME_FAILED;
+        try {
+            mLinccer.submitCurrentEnvironment();
+            outcome = TransferTracer.OUTCOME_OK;
+            mLastRefresh = System.currentTimeMillis();
+        } finally {
+            TransferTracer.end(span, outcome);
+            mLinccer.getMetrics().record(LinccerMetrics.ENVIRONMENT, null,
+                    (System.nanoTime() - start) / 1000, outcome);
+        }
+    }
+
+    /**
+     * @return whether the environment was submitted within the given time
+     */
+    public boolean isEnvironmentFresh(long maxAgeMillis) {
+        return System.currentTimeMillis() - mLastRefresh <= maxAgeMillis;
+    }
+
+    /**
+     * Prepares a share or receive which is likely to happen soon, e.g. when the phone is picked
+     * up or the share screen is opened. In the background it takes a fresh Wi-Fi scan and
+     * location fix, submits the environment and opens the connections to the servers, so the
+     * following {@link AsyncLinccer#asyncShare} or {@link AsyncLinccer#asyncReceive} starts with
+     * an already registered environment. Returns immediately; overlapping calls and calls shortly
+     * after a refresh are ignored.
+     */
+    public void warmUp() {
+        if (isEnvironmentFresh(WARM_UP_INTERVAL) || !mWarmingUp.compareAndSet(false, true)) {
+            return;
+        }
+
+        AndroidClientConfig.prewarmServers(mLinccer.getClientConfig());
+
+        new Thread(new Runnable() {
+            public void run() {
+                CountDownLatch scanned = new CountDownLatch(1);
+                CountDownLatch located = new CountDownLatch(1);
+                BroadcastReceiver scanReceiver = null;
+                LocationListener locationListener = null;
+                try {
+                    scanReceiver = startWifiScan(scanned);
+                    locationListener = requestLocationFix(located);
+
+                    long deadline = System.currentTimeMillis() + WARM_UP_TIMEOUT;
+                    scanned.await(WARM_UP_TIMEOUT, TimeUnit.MILLISECONDS);
+                    located.await(Math.max(0, deadline - System.currentTimeMillis()),
+                            TimeUnit.MILLISECONDS);
+
+                    refreshLocation();
+                } catch (InterruptedException e) {
+                    Log.d(LOG_TAG, "warm-up interrupted");
+                } catch (Exception e) {
+                    Log.w(LOG_TAG, "warm-up failed", e);
+                } finally {
+                    if (scanReceiver != null) {
+                        mContext.unregisterReceiver(scanReceiver);
+                    }
+                    if (locationListener != null) {
+                        mLocationManager.removeUpdates(locationListener);
+                    }
+                    mWarmingUp.set(false);
+                }
+            }
+        }, "LinccWarmUp").start();
     }
 
     public void deactivate() {
+        initialize();
         mLocationManager.removeUpdates(this);
     }
 
     public void activate() {
+        initialize();
 
         mLocationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 1000, 1, this);
 
@@ -167,6 +280,70 @@ public class LinccLocationManager implements LocationListener {
         }
     }
 
+    /**
+     * Starts a Wi-Fi scan which releases the latch when its results are available, or right away
+     * if no scan could be started.
+     *
+     * @return the receiver to unregister afterwards or null if no scan was started
+     */
+    private BroadcastReceiver startWifiScan(final CountDownLatch scanned) {
+        initialize();
+        if (!mWifiManager.isWifiEnabled()) {
+            scanned.countDown();
+            return null;
+        }
+
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                scanned.countDown();
+            }
+        };
+        mContext.registerReceiver(receiver, new IntentFilter(
+                WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
+
+        if (!mWifiManager.startScan()) {
+            mContext.unregisterReceiver(receiver);
+            scanned.countDown();
+            return null;
+        }
+        return receiver;
+    }
+
+    /**
+     * Requests a fresh fix of the network provider which releases the latch when it arrives; the
+     * fix then is the provider's last known location used by {@link #refreshLocation()}. Without
+     * a network provider the latch is released right away.
+     *
+     * @return the listener to remove afterwards or null if no fix was requested
+     */
+    private LocationListener requestLocationFix(final CountDownLatch located) {
+        initialize();
+        if (!mNetworkProviderAvailable) {
+            located.countDown();
+            return null;
+        }
+
+        LocationListener listener = new LocationListener() {
+            public void onLocationChanged(Location location) {
+                located.countDown();
+            }
+
+            public void onProviderDisabled(String provider) {
+                located.countDown();
+            }
+
+            public void onProviderEnabled(String provider) {
+            }
+
+            public void onStatusChanged(String provider, int status, Bundle extras) {
+            }
+        };
+        mLocationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, 0, 0, listener,
+                Looper.getMainLooper());
+        return listener;
+    }
+
     private String trimAddress(String pAddressLine) {
         if (pAddressLine.length() < 27)
             return pAddressLine;
@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.hoccer.api.android.AsyncLinccer.MessageType;
+
+/**
+ * Registry of latencies and outcomes of the operations of an {@link AsyncLinccer}. Operations are
+ * keyed by name and mode (e.g. "share one-to-one"); each key has a {@link LatencyHistogram} over
+ * all calls and one per {@link MessageType} outcome, so e.g. slow collisions can be told apart
+ * from slow shares. Operations without a MessageType outcome, like environment submits, use the
+ * TransferTracer.OUTCOME_* codes. Recording is lock-free.
+ */
+public class LinccerMetrics {
+
+    // Constants ---------------------------------------------------------
+
+    public static final String SHARE       = "share";
+    public static final String RECEIVE     = "receive";
+    public static final String ENVIRONMENT = "environment";
+
+    private static final int   MIN_OUTCOME = MessageType.UNKNOWN_EXCEPTION;
+    private static final int   MAX_OUTCOME = MessageType.PEEKED;
+
+    // Instance Fields ---------------------------------------------------
+
+    private final ConcurrentHashMap<String, OperationMetrics> mOperations =
+            new ConcurrentHashMap<String, OperationMetrics>();
+
+    // Public Instance Methods -------------------------------------------
+
+    /**
+     * @param mode
+     *            the share/receive mode or null for operations without mode
+     * @param outcome
+     *            one of {@link MessageType} or TransferTracer.OUTCOME_*
+     */
+    public void record(String operation, String mode, long micros, int outcome) {
+
+        getOperation(keyOf(operation, mode)).record(micros, outcome);
+    }
+
+    public void reset() {
+
+        mOperations.clear();
+    }
+
+    /**
+     * @return snapshots of all operations recorded so far, keyed by operation and mode
+     */
+    public Map<String, Snapshot> snapshot() {
+
+        Map<String, Snapshot> snapshots = new HashMap<String, Snapshot>();
+        for (Map.Entry<String, OperationMetrics> entry : mOperations.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * Exports all operations as JSON, e.g.
+     * <code>{"share one-to-one": {"count": 12, "mean_us": 80211, "p50_us": 65535, "p90_us": ...,
+     * "p99_us": ..., "max_us": ..., "outcomes": {"3": {"count": 10, "mean_us": ...}, "-3":
+     * {"count": 2, ...}}}}</code>
+     */
+    public JSONObject toJson() throws JSONException {
+
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Snapshot> entry : snapshot().entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return json;
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private OperationMetrics getOperation(String key) {
+
+        OperationMetrics operation = mOperations.get(key);
+        if (operation == null) {
+            OperationMetrics created = new OperationMetrics();
+            operation = mOperations.putIfAbsent(key, created);
+            if (operation == null) {
+                operation = created;
+            }
+        }
+        return operation;
+    }
+
+    private static String keyOf(String operation, String mode) {
+
+        return mode == null ? operation : operation + " " + mode;
+    }
+
+    // Inner Classes -----------------------------------------------------
+
+    private static class OperationMetrics {
+
+        private final LatencyHistogram                       mLatency  = new LatencyHistogram();
+
+        /** Created on the first use of an outcome, most operations only see two or three */
+        private final AtomicReferenceArray<LatencyHistogram> mOutcomes =
+                new AtomicReferenceArray<LatencyHistogram>(MAX_OUTCOME - MIN_OUTCOME + 1);
+
+        void record(long micros, int outcome) {
+
+            mLatency.record(micros);
+            if (outcome >= MIN_OUTCOME && outcome <= MAX_OUTCOME) {
+                getOutcome(outcome - MIN_OUTCOME).record(micros);
+            }
+        }
+
+        Snapshot snapshot() {
+
+            Map<Integer, LatencyHistogram.Snapshot> outcomes =
+                    new HashMap<Integer, LatencyHistogram.Snapshot>();
+            for (int i = 0; i < mOutcomes.length(); i++) {
+                LatencyHistogram histogram = mOutcomes.get(i);
+                if (histogram != null) {
+                    outcomes.put(i + MIN_OUTCOME, histogram.snapshot());
+                }
+            }
+            return new Snapshot(mLatency.snapshot(), outcomes);
+        }
+
+        private LatencyHistogram getOutcome(int index) {
+
+            LatencyHistogram histogram = mOutcomes.get(index);
+            if (histogram == null) {
+                mOutcomes.compareAndSet(index, null, new LatencyHistogram());
+                histogram = mOutcomes.get(index);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Latency distributions of one operation, over all calls and per outcome, at the time the
+     * snapshot was taken.
+     */
+    public static class Snapshot {
+
+        private final LatencyHistogram.Snapshot                mLatency;
+        private final Map<Integer, LatencyHistogram.Snapshot> mOutcomes;
+
+        private Snapshot(LatencyHistogram.Snapshot latency,
+                Map<Integer, LatencyHistogram.Snapshot> outcomes) {
+
+            mLatency = latency;
+            mOutcomes = Collections.unmodifiableMap(outcomes);
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+
+            return mLatency;
+        }
+
+        /**
+         * @return how often the operation ended with the given {@link MessageType}
+         */
+        public long getOutcomeCount(int outcome) {
+
+            LatencyHistogram.Snapshot latency = mOutcomes.get(outcome);
+            return latency == null ? 0 : latency.getCount();
+        }
+
+        /**
+         * @return the latency distribution of the calls which ended with the given
+         *         {@link MessageType}, or null if no call did
+         */
+        public LatencyHistogram.Snapshot getOutcomeLatency(int outcome) {
+
+            return mOutcomes.get(outcome);
+        }
+
+        /**
+         * @return the latency distributions of all outcomes seen so far, keyed by outcome
+         */
+        public Map<Integer, LatencyHistogram.Snapshot> getOutcomes() {
+
+            return mOutcomes;
+        }
+
+        public JSONObject toJson() throws JSONException {
+
+            JSONObject json = toJson(mLatency);
+            JSONObject outcomes = new JSONObject();
+            for (Map.Entry<Integer, LatencyHistogram.Snapshot> entry : mOutcomes.entrySet()) {
+                outcomes.put(String.valueOf(entry.getKey()), toJson(entry.getValue()));
+            }
+            json.put("outcomes", outcomes);
+            return json;
+        }
+
+        private static JSONObject toJson(LatencyHistogram.Snapshot latency) throws JSONException {
+
+            JSONObject json = new JSONObject();
+            json.put("count", latency.getCount());
+            json.put("mean_us", latency.getMean());
+            json.put("p50_us", latency.getPercentile(50));
+            json.put("p90_us", latency.getPercentile(90));
+            json.put("p99_us", latency.getPercentile(99));
+            json.put("max_us", latency.getMax());
+            return json;
+        }
+    }
+}
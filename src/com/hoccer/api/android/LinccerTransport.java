@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.List;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The Linccer v3 client protocol on top of an {@link HttpClient}, used by {@link AsyncLinccer}
+ * instead of the Java API's own connections when its {@link AndroidClientConfig} has a
+ * connection pool or servers of its own (see {@link AndroidClientConfig#hasOwnTransport()}).
+ * 
+ * Shares and receives return the first payload of a match or null if there was no counterpart;
+ * any other answer of the server is thrown as a {@link HttpResponseException} carrying its status.
+ * The environment is kept here and submitted as a whole, like the Java API does.
+ */
+class LinccerTransport {
+
+    // Constants ---------------------------------------------------------
+
+    private static final String CONTENT_TYPE = "application/json";
+    private static final String CHARSET      = "UTF-8";
+
+    // Instance Fields ---------------------------------------------------
+
+    private final AndroidClientConfig mConfig;
+    private final HttpClient          mClient;
+    private final String              mClientId;
+
+    /** Parts of the environment, null until known, guarded by this */
+    private JSONObject                mWifi;
+    private JSONObject                mNetwork;
+    private JSONObject                mGps;
+
+    private volatile boolean          mAutoSubmit = true;
+
+    // Constructors ------------------------------------------------------
+
+    LinccerTransport(AndroidClientConfig config, HttpClient client, String clientId) {
+
+        mConfig = config;
+        mClient = client;
+        mClientId = clientId;
+    }
+
+    // Package Instance Methods ------------------------------------------
+
+    /**
+     * @return the payload the receivers got or null if nobody received it
+     */
+    JSONObject share(String mode, JSONObject payload) throws IOException {
+
+        HttpPut request = new HttpPut(signedActionUri(mode));
+        request.setEntity(jsonEntity(payload));
+        return firstPayload(execute(request));
+    }
+
+    /**
+     * @return the received payload or null if nothing was shared
+     */
+    JSONObject receive(String mode) throws IOException {
+
+        return firstPayload(execute(new HttpGet(signedActionUri(mode))));
+    }
+
+    void onWifiChanged(List<String> bssids) throws IOException {
+
+        JSONObject wifi = new JSONObject();
+        try {
+            wifi.put("bssids", new JSONArray(bssids));
+            wifi.put("timestamp", System.currentTimeMillis());
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        synchronized (this) {
+            mWifi = wifi;
+        }
+        submitIfAuto();
+    }
+
+    void onNetworkChanged(double latitude, double longitude, int accuracy, long time)
+            throws IOException {
+
+        JSONObject network = location(latitude, longitude, accuracy, time);
+        synchronized (this) {
+            mNetwork = network;
+        }
+        submitIfAuto();
+    }
+
+    void onGpsChanged(double latitude, double longitude, int accuracy, long time)
+            throws IOException {
+
+        JSONObject gps = location(latitude, longitude, accuracy, time);
+        synchronized (this) {
+            mGps = gps;
+        }
+        submitIfAuto();
+    }
+
+    void setAutoSubmit(boolean autoSubmit) {
+
+        mAutoSubmit = autoSubmit;
+    }
+
+    void submitEnvironment() throws IOException {
+
+        JSONObject environment = new JSONObject();
+        try {
+            synchronized (this) {
+                environment.putOpt("wifi", mWifi);
+                environment.putOpt("network", mNetwork);
+                environment.putOpt("gps", mGps);
+            }
+        } catch (JSONException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+
+        HttpPut request = new HttpPut(mConfig.signUri(clientUri() + "/environment"));
+        request.setEntity(jsonEntity(environment));
+        execute(request);
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private void submitIfAuto() throws IOException {
+
+        if (mAutoSubmit) {
+            submitEnvironment();
+        }
+    }
+
+    private String clientUri() {
+
+        return mConfig.getLinccerServer() + "/clients/" + mClientId;
+    }
+
+    private String signedActionUri(String mode) throws IOException {
+
+        return mConfig.signUri(clientUri() + "/action/" + URLEncoder.encode(mode, CHARSET));
+    }
+
+    /**
+     * @return the body of a 2xx response, null for 204
+     * @throws HttpResponseException
+     *             for any other status
+     */
+    private String execute(HttpUriRequest request) throws IOException {
+
+        HttpResponse response = mClient.execute(request);
+        HttpEntity entity = response.getEntity();
+        int status = response.getStatusLine().getStatusCode();
+        String body = null;
+        if (entity != null) {
+            // reading the entity to the end releases the connection
+            body = EntityUtils.toString(entity, CHARSET);
+        }
+
+        if (status < 200 || status >= 300) {
+            throw new HttpResponseException(status, request.getMethod() + " "
+                    + request.getURI().getPath() + ": "
+                    + response.getStatusLine().getReasonPhrase());
+        }
+        return status == HttpStatus.SC_NO_CONTENT ? null : body;
+    }
+
+    // Private Static Methods --------------------------------------------
+
+    private static StringEntity jsonEntity(JSONObject json) throws IOException {
+
+        StringEntity entity = new StringEntity(json.toString(), CHARSET);
+        entity.setContentType(CONTENT_TYPE);
+        return entity;
+    }
+
+    /**
+     * @return the first payload of a match, which the server sends as an array
+     */
+    private static JSONObject firstPayload(String body) throws IOException {
+
+        if (body == null || body.length() == 0) {
+            return null;
+        }
+        try {
+            JSONArray payloads = new JSONArray(body);
+            return payloads.length() == 0 ? null : payloads.getJSONObject(0);
+        } catch (JSONException e) {
+            throw new IOException("bad response: " + e.getMessage());
+        }
+    }
+
+    private static JSONObject location(double latitude, double longitude, int accuracy,
+            long time) {
+
+        JSONObject location = new JSONObject();
+        try {
+            location.put("latitude", latitude);
+            location.put("longitude", longitude);
+            location.put("accuracy", accuracy);
+            location.put("timestamp", time);
+        } catch (JSONException e) {
+            // only thrown for NaN and infinite coordinates
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return location;
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ThumbnailUtils;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+
+/**
+ * A small JPEG preview of an image or video share. The preview is stored in the filecache ahead of
+ * the full content and linked from the payload, so receivers can show something while the full
+ * file is still downloading, see {@link FileCacheService#storePreview}.
+ * 
+ * Images are decoded subsampled by a power of two close to the preview size and in RGB 565, so
+ * decoding a camera picture needs a fraction of the memory the full bitmap would. The encoded
+ * preview is kept in memory; it is only a few kilobytes.
+ */
+public class PreviewContent extends AndroidStreamableContent {
+
+    // Constants ---------------------------------------------------------
+
+    private static final String LOG_TAG          = PreviewContent.class.getSimpleName();
+
+    public static final String  CONTENT_TYPE     = "image/jpeg";
+
+    /** Key of the preview's filecache URI in the payload */
+    public static final String  KEY_PREVIEW_URI  = "preview_uri";
+
+    /** Key of the preview's content type in the payload */
+    public static final String  KEY_PREVIEW_TYPE = "preview_type";
+
+    /** Default length of the preview's longer side in pixels */
+    public static final int     DEFAULT_SIZE     = 160;
+
+    private static final int    JPEG_QUALITY     = 70;
+
+    // Static Methods ----------------------------------------------------
+
+    /**
+     * Creates a preview of an image or video.
+     * 
+     * @param maxSize
+     *            the maximum length of the preview's longer side in pixels
+     * @return the preview or null if the content is neither an image nor a video or can't be
+     *         decoded
+     */
+    public static PreviewContent create(ContentResolver contentResolver,
+            AndroidStreamableContent source, int maxSize) throws IOException {
+
+        String type = source.getContentType();
+        Bitmap bitmap = null;
+        if (type == null) {
+            return null;
+        } else if (type.startsWith("image/")) {
+            bitmap = decodeImage(source, maxSize);
+        } else if (type.startsWith("video/") && source.getDataUri() != null) {
+            bitmap = decodeVideoFrame(contentResolver, source.getDataUri());
+        }
+
+        if (bitmap == null) {
+            Log.d(LOG_TAG, "no preview for " + type);
+            return null;
+        }
+
+        try {
+            return new PreviewContent(contentResolver, encode(bitmap, maxSize));
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    // Instance Fields ---------------------------------------------------
+
+    private final byte[] mJpeg;
+
+    // Constructors ------------------------------------------------------
+
+    private PreviewContent(ContentResolver contentResolver, byte[] jpeg) {
+
+        super(contentResolver);
+        mJpeg = jpeg;
+        setContentType(CONTENT_TYPE);
+        setFilename("preview.jpg");
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    @Override
+    public InputStream openRawInputStream() throws IOException {
+
+        return new ByteArrayInputStream(mJpeg);
+    }
+
+    @Override
+    public OutputStream openRawOutputStream() throws IOException {
+
+        throw new IOException("Previews are read only");
+    }
+
+    @Override
+    public long getRawStreamLength() throws IOException {
+
+        return mJpeg.length;
+    }
+
+    @Override
+    public long getNewStreamLength() throws IOException {
+
+        return mJpeg.length;
+    }
+
+    /**
+     * Links this preview, stored at the given filecache URI, from a payload.
+     */
+    public void linkFrom(JSONObject payload, String uri) throws JSONException {
+
+        payload.put(KEY_PREVIEW_URI, uri);
+        payload.put(KEY_PREVIEW_TYPE, CONTENT_TYPE);
+    }
+
+    // Private Static Methods --------------------------------------------
+
+    private static Bitmap decodeImage(AndroidStreamableContent source, int maxSize)
+            throws IOException {
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream in = source.openNewInputStream();
+        try {
+            BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // the largest subsampling which still yields at least the preview size
+        int longerSide = Math.max(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (longerSide / (sampleSize * 2) >= maxSize) {
+            sampleSize *= 2;
+        }
+
+        options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inPurgeable = true;
+        options.inInputShareable = true;
+        in = source.openNewInputStream();
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Bitmap decodeVideoFrame(ContentResolver contentResolver, Uri uri) {
+
+        if ("file".equals(uri.getScheme())) {
+            return ThumbnailUtils.createVideoThumbnail(uri.getPath(),
+                    MediaStore.Video.Thumbnails.MINI_KIND);
+        }
+        if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())
+                && MediaStore.AUTHORITY.equals(uri.getAuthority())) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            return MediaStore.Video.Thumbnails.getThumbnail(contentResolver, ContentUris
+                    .parseId(uri), MediaStore.Video.Thumbnails.MINI_KIND, options);
+        }
+        return null;
+    }
+
+    private static byte[] encode(Bitmap bitmap, int maxSize) {
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        Bitmap scaled = bitmap;
+        if (Math.max(width, height) > maxSize) {
+            float scale = (float) maxSize / Math.max(width, height);
+            scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(width * scale)),
+                    Math.max(1, Math.round(height * scale)), true);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scaled.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        if (scaled != bitmap) {
+            scaled.recycle();
+        }
+        return out.toByteArray();
+    }
+}
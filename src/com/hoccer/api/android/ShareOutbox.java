@@ -0,0 +1,434 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Message;
+import android.util.Log;
+
+import com.hoccer.api.ClientActionException;
+import com.hoccer.api.android.AsyncLinccer.MessageType;
+
+/**
+ * Durable queue of shares for an {@link AsyncLinccer}. Shares are appended to a journal in the
+ * app's files directory and sent one after the other by a background thread while the device is
+ * connected. Shares failing with an I/O error, a server error or while the device is offline are
+ * retried with exponential backoff and jitter; every other outcome is final and reported to the
+ * handler like {@link AsyncLinccer#asyncShare} does, with the id returned by
+ * {@link #share(String, JSONObject)} in {@link Message#arg1}. Shares still queued when the process
+ * dies are sent after the next {@link #start()}.
+ */
+public class ShareOutbox {
+
+    // Constants ---------------------------------------------------------
+
+    private static final String LOG_TAG           = ShareOutbox.class.getSimpleName();
+
+    public static final String  JOURNAL_FILE_NAME = "share_outbox.journal";
+
+    private static final String ADD               = "add";
+    private static final String DONE              = "done";
+
+    private static final long   MIN_BACKOFF       = 1000;
+    private static final long   MAX_BACKOFF       = 5 * 60 * 1000;
+    private static final int    MAX_ATTEMPTS      = 10;
+
+    /** Compact the journal once it holds this many finished entries */
+    private static final int    COMPACT_THRESHOLD = 64;
+
+    /** Causes followed when looking for an I/O error, guards against cyclic chains */
+    private static final int    MAX_CAUSE_DEPTH   = 8;
+
+    // Instance Fields ---------------------------------------------------
+
+    private final Context             mContext;
+    private final AsyncLinccer        mLinccer;
+    private final Handler             mHandler;
+    private final File                mJournalFile;
+    private final Random              mRandom  = new Random();
+
+    /** Pending entries in share order, guarded by this */
+    private final LinkedList<Entry>   mPending = new LinkedList<Entry>();
+
+    private Writer                    mJournal;
+    private int                       mNextId;
+    private int                       mFinishedInJournal;
+    private boolean                   mConnected;
+    private Thread                    mSender;
+
+    /** The last stopped sender, which may still be finishing a share */
+    private Thread                    mStoppedSender;
+
+    private final BroadcastReceiver   mConnectivityReceiver;
+
+    // Constructors ------------------------------------------------------
+
+    /**
+     * @param handler
+     *            receives SEARCHING and the final {@link MessageType} of every queued share,
+     *            including shares restored from the journal
+     */
+    public ShareOutbox(Context context, AsyncLinccer linccer, Handler handler) {
+
+        mContext = context.getApplicationContext();
+        mLinccer = linccer;
+        mHandler = handler;
+        mJournalFile = new File(mContext.getFilesDir(), JOURNAL_FILE_NAME);
+
+        mConnectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context receiverContext, Intent intent) {
+                updateConnectivity();
+            }
+        };
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    /**
+     * Restores shares from the journal, starts watching connectivity and starts sending.
+     */
+    public synchronized void start() throws IOException {
+
+        if (mSender != null) {
+            return;
+        }
+
+        replayJournal();
+        mJournal = new OutputStreamWriter(new FileOutputStream(mJournalFile, true), "UTF-8");
+
+        mContext.registerReceiver(mConnectivityReceiver, new IntentFilter(
+                ConnectivityManager.CONNECTIVITY_ACTION));
+        mConnected = isConnected();
+
+        final Thread previous = mStoppedSender;
+        mStoppedSender = null;
+        mSender = new Thread(new Runnable() {
+            public void run() {
+                sendLoop(previous);
+            }
+        }, LOG_TAG);
+        mSender.start();
+    }
+
+    /**
+     * Stops sending; queued shares stay in the journal. A share which is already being sent is
+     * finished first, and a following {@link #start()} only sends once it is.
+     */
+    public synchronized void stop() {
+
+        if (mSender == null) {
+            return;
+        }
+
+        mContext.unregisterReceiver(mConnectivityReceiver);
+        mSender.interrupt();
+        mStoppedSender = mSender;
+        mSender = null;
+
+        try {
+            mJournal.close();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "can't close journal", e);
+        }
+        mJournal = null;
+    }
+
+    /**
+     * Queues a share. It is written to the journal before this method returns.
+     * 
+     * @return the id of the share, passed in {@link Message#arg1} of its final message
+     */
+    public synchronized int share(String mode, JSONObject payload) throws IOException {
+
+        if (mJournal == null) {
+            throw new IllegalStateException("Outbox is not started");
+        }
+
+        Entry entry = new Entry(mNextId++, mode, payload);
+        appendToJournal(ADD + "\t" + entry.mId + "\t" + mode + "\t" + payload);
+        mPending.addLast(entry);
+        notifyAll();
+        return entry.mId;
+    }
+
+    public synchronized int getPendingCount() {
+
+        return mPending.size();
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    /**
+     * @param previous
+     *            a stopped sender which may still be sending the head entry, or null
+     */
+    private void sendLoop(Thread previous) {
+
+        try {
+            if (previous != null) {
+                previous.join();
+            }
+
+            while (true) {
+
+                Entry entry;
+                synchronized (this) {
+                    while (isCurrentSender() && (mPending.isEmpty() || !mConnected)) {
+                        wait();
+                    }
+                    if (!isCurrentSender()) {
+                        return;
+                    }
+                    entry = mPending.getFirst();
+                }
+
+                Message msg = mLinccer.syncShare(entry.mMode, entry.mPayload, mHandler);
+                msg.arg1 = entry.mId;
+
+                if (isTransient(msg) && ++entry.mAttempts < MAX_ATTEMPTS) {
+
+                    long backoff = backoffFor(entry.mAttempts);
+                    Log.d(LOG_TAG, "share " + entry.mId + " failed, retrying in " + backoff
+                            + "ms");
+                    synchronized (this) {
+                        // new shares and connectivity changes notify, don't retry early
+                        long deadline = System.currentTimeMillis() + backoff;
+                        while (backoff > 0 && isCurrentSender()) {
+                            wait(backoff);
+                            backoff = deadline - System.currentTimeMillis();
+                        }
+                    }
+                    continue;
+                }
+
+                synchronized (this) {
+                    // after a restart the entry is the replayed one with the same id
+                    removePending(entry.mId);
+                    finish(entry);
+                }
+                mHandler.handleMessage(msg);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    private boolean isCurrentSender() {
+
+        return mSender == Thread.currentThread();
+    }
+
+    /**
+     * @return whether the share failed before it reached the server or because of the server,
+     *         so repeating it may succeed
+     */
+    private boolean isTransient(Message msg) {
+
+        if (msg.what == MessageType.UNKNOWN_EXCEPTION) {
+            // I/O errors and server errors of the in-tree transport
+            return hasIOExceptionCause((Throwable) msg.obj) || !isConnected();
+        }
+        if (msg.what == MessageType.BAD_CLIENT_ACTION && msg.obj instanceof ClientActionException) {
+            // the java-api Linccer reports I/O errors as ClientActionException
+            return hasIOExceptionCause(((Throwable) msg.obj).getCause()) || !isConnected();
+        }
+        return false;
+    }
+
+    private static boolean hasIOExceptionCause(Throwable throwable) {
+
+        for (int depth = 0; throwable != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (throwable instanceof IOException) {
+                return true;
+            }
+            throwable = throwable.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * @return exponential backoff for the given attempt with equal jitter: between half and all
+     *         of the exponential delay
+     */
+    private long backoffFor(int attempt) {
+
+        long delay = Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(attempt - 1, 20));
+        synchronized (mRandom) {
+            return delay / 2 + (long) (mRandom.nextDouble() * delay / 2);
+        }
+    }
+
+    private void finish(Entry entry) {
+
+        try {
+            if (mJournal == null) {
+                // stopped while sending, record the share without reopening for good
+                appendToClosedJournal(DONE + "\t" + entry.mId);
+                return;
+            }
+
+            appendToJournal(DONE + "\t" + entry.mId);
+            mFinishedInJournal++;
+            if (mPending.isEmpty() || mFinishedInJournal >= COMPACT_THRESHOLD) {
+                compactJournal();
+            }
+        } catch (IOException e) {
+            // the share may be repeated after a restart
+            Log.w(LOG_TAG, "can't mark share " + entry.mId + " as done", e);
+        }
+    }
+
+    private void appendToJournal(String line) throws IOException {
+
+        mJournal.write(line);
+        mJournal.write('\n');
+        mJournal.flush();
+    }
+
+    private void appendToClosedJournal(String line) throws IOException {
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mJournalFile, true), "UTF-8");
+        try {
+            writer.write(line);
+            writer.write('\n');
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Rewrites the journal with the pending entries only.
+     */
+    private void compactJournal() throws IOException {
+
+        File compacted = new File(mJournalFile.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(compacted), "UTF-8");
+        try {
+            for (Entry entry : mPending) {
+                writer.write(ADD + "\t" + entry.mId + "\t" + entry.mMode + "\t" + entry.mPayload
+                        + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+
+        mJournal.close();
+        if (!compacted.renameTo(mJournalFile)) {
+            throw new IOException("can't replace " + mJournalFile);
+        }
+        mJournal = new OutputStreamWriter(new FileOutputStream(mJournalFile, true), "UTF-8");
+        mFinishedInJournal = 0;
+    }
+
+    private void replayJournal() throws IOException {
+
+        mPending.clear();
+        if (!mJournalFile.exists()) {
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+                mJournalFile), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                String[] fields = line.split("\t", 4);
+                try {
+                    int id = Integer.parseInt(fields[1]);
+                    mNextId = Math.max(mNextId, id + 1);
+
+                    if (ADD.equals(fields[0]) && fields.length == 4) {
+                        mPending.addLast(new Entry(id, fields[2], new JSONObject(fields[3])));
+                    } else if (DONE.equals(fields[0])) {
+                        removePending(id);
+                        mFinishedInJournal++;
+                    }
+                } catch (JSONException e) {
+                    Log.w(LOG_TAG, "dropping unreadable journal entry " + line);
+                } catch (RuntimeException e) {
+                    // e.g. a line torn by a crash while appending
+                    Log.w(LOG_TAG, "dropping unreadable journal entry " + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void removePending(int id) {
+
+        for (Entry entry : mPending) {
+            if (entry.mId == id) {
+                mPending.remove(entry);
+                return;
+            }
+        }
+    }
+
+    private synchronized void updateConnectivity() {
+
+        mConnected = isConnected();
+        if (mConnected) {
+            notifyAll();
+        }
+    }
+
+    private boolean isConnected() {
+
+        ConnectivityManager connectivity = (ConnectivityManager) mContext
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivity.getActiveNetworkInfo();
+        return network != null && network.isConnected();
+    }
+
+    // Inner Classes -----------------------------------------------------
+
+    private static class Entry {
+
+        private final int        mId;
+        private final String     mMode;
+        private final JSONObject mPayload;
+        private int              mAttempts;
+
+        Entry(int id, String mode, JSONObject payload) {
+
+            mId = id;
+            mMode = mode;
+            mPayload = payload;
+        }
+    }
+}
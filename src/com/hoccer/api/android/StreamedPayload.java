@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import android.content.Context;
+
+/**
+ * Moves share payloads between a {@link JsonStreamWriter} on the sender and a
+ * {@link JsonPullParser} on the receiver without holding them in memory. A payload is written to a
+ * file in the cache directory; small payloads are shared inline as before, larger ones are stored
+ * in the filecache and shared as an envelope referencing them. The receiver downloads the payload
+ * into a file and parses it from there. Used by {@link AsyncLinccer#asyncShareStreamed} and
+ * {@link AsyncLinccer#asyncReceiveStreamed}.
+ */
+public class StreamedPayload {
+
+    // Constants ---------------------------------------------------------
+
+    public static final String CONTENT_TYPE     = "application/json";
+
+    /** Key of the filecache URI in an envelope */
+    public static final String KEY_PAYLOAD_URI  = "streamed_payload";
+
+    /** Key of the payload size in bytes in an envelope */
+    public static final String KEY_LENGTH       = "streamed_payload_length";
+
+    /** Payloads up to this size are shared inline */
+    public static final int    INLINE_LIMIT     = 16 * 1024;
+
+
+    private static final int   EXPIRES_IN       = 3 * 60;
+
+    private static final long  TRANSFER_TIMEOUT = 2 * 60 * 1000;
+
+    private static final String CHARSET        = "UTF-8";
+
+    // Inner Classes -----------------------------------------------------
+
+    /**
+     * Writes a payload on the sharing side. The payload must be a single JSON object.
+     */
+    public interface Producer {
+
+        void writeTo(JsonStreamWriter writer) throws IOException;
+    }
+
+    /**
+     * Reads a payload on the receiving side. The parser is positioned before the first token.
+     */
+    public interface Consumer {
+
+        /**
+         * @return the object delivered to the handler with
+         *         {@link AsyncLinccer.MessageType#RECEIVED}
+         */
+        Object readFrom(JsonPullParser parser) throws IOException;
+    }
+
+    /**
+     * Blocks until a filecache transfer finished.
+     */
+    private static class Completion implements TransferCompletionHandler.Listener {
+
+        private final CountDownLatch mDone    = new CountDownLatch(1);
+        private final AtomicBoolean  mSuccess = new AtomicBoolean();
+
+        public boolean isCurrent() {
+
+            return mDone.getCount() > 0;
+        }
+
+        public void onTransferFinished(boolean success) {
+
+            mSuccess.set(success);
+            mDone.countDown();
+        }
+
+        void await(String transfer) throws IOException, InterruptedException {
+
+            if (!mDone.await(TRANSFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new IOException(transfer + " timed out");
+            }
+            if (!mSuccess.get()) {
+                throw new IOException(transfer + " failed");
+            }
+        }
+    }
+
+    // Static Methods ----------------------------------------------------
+
+    /**
+     * @return whether the payload is an envelope referencing a streamed payload in the filecache
+     */
+    public static boolean isEnvelope(JSONObject payload) {
+
+        return payload != null && payload.has(KEY_PAYLOAD_URI);
+    }
+
+    // Package Static Methods --------------------------------------------
+
+    /**
+     * Writes the producer's payload and turns it into what is actually shared: the payload itself
+     * if it is small, otherwise an envelope for it after it has been stored in the filecache.
+     */
+    static JSONObject share(Context context, FileCacheClient fileCache, Producer producer)
+            throws IOException, JSONException, InterruptedException {
+
+        int chunkSize = TransferPolicy.forContext(context).getChunkSize();
+        File file = File.createTempFile("share", ".json", context.getCacheDir());
+        try {
+            Writer out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(
+                    file), chunkSize), CHARSET);
+            JsonStreamWriter writer = new JsonStreamWriter(out);
+            boolean written = false;
+            try {
+                producer.writeTo(writer);
+                written = true;
+            } finally {
+                if (written) {
+                    // fails if the producer left the document incomplete
+                    writer.close();
+                } else {
+                    closeAfterFailure(out);
+                }
+            }
+
+            long length = file.length();
+            if (length <= INLINE_LIMIT) {
+                Reader reader = openReader(file, chunkSize);
+                try {
+                    return new JSONObject(new JSONTokener(reader));
+                } finally {
+                    reader.close();
+                }
+            }
+
+            JSONObject envelope = new JSONObject();
+            envelope.put(KEY_PAYLOAD_URI, store(fileCache, file, chunkSize));
+            envelope.put(KEY_LENGTH, length);
+            return envelope;
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Passes a received payload to the consumer, downloading it first if it is an envelope.
+     */
+    static Object receive(Context context, FileCacheClient fileCache, JSONObject payload,
+            Consumer consumer) throws IOException, JSONException, InterruptedException {
+
+        if (!isEnvelope(payload)) {
+            // small payloads arrive inline and are already in memory anyway
+            return consumer.readFrom(new JsonPullParser(new StringReader(payload.toString())));
+        }
+
+        int chunkSize = TransferPolicy.forContext(context).getChunkSize();
+        File file = File.createTempFile("receive", ".json", context.getCacheDir());
+        try {
+            fetch(fileCache, payload.getString(KEY_PAYLOAD_URI), file, chunkSize);
+
+            JsonPullParser parser = new JsonPullParser(openReader(file, chunkSize));
+            try {
+                return consumer.readFrom(parser);
+            } finally {
+                parser.close();
+            }
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    // Private Static Methods --------------------------------------------
+
+    /**
+     * Closes the file behind a failed producer without the completeness check of
+     * {@link JsonStreamWriter#close()}, so the producer's exception is the one reported.
+     */
+    private static void closeAfterFailure(Writer out) {
+
+        try {
+            out.close();
+        } catch (IOException e) {
+            // the producer's exception is already on its way
+        }
+    }
+
+    private static Reader openReader(File file, int chunkSize) throws IOException {
+
+        return new InputStreamReader(new BufferedInputStream(new FileInputStream(file),
+                chunkSize), CHARSET);
+    }
+
+    private static String store(FileCacheClient fileCache, File file, int chunkSize)
+            throws IOException, InterruptedException {
+
+        Completion completion = new Completion();
+        String uri = fileCache.store(new FileContent(file, CONTENT_TYPE, chunkSize), EXPIRES_IN,
+                completion);
+        try {
+            completion.await("store of " + uri);
+        } catch (IOException e) {
+            fileCache.cancel(uri);
+            throw e;
+        }
+        return uri;
+    }
+
+    private static void fetch(FileCacheClient fileCache, String uri, File file, int chunkSize)
+            throws IOException, InterruptedException {
+
+        Completion completion = new Completion();
+        fileCache.fetch(uri, new FileContent(file, CONTENT_TYPE, chunkSize), completion);
+        try {
+            completion.await("fetch of " + uri);
+        } catch (IOException e) {
+            fileCache.cancel(uri);
+            throw e;
+        }
+    }
+}
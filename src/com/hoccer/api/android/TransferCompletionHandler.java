@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.hoccer.http.HttpResponseHandler;
+
+/**
+ * Decorates a {@link HttpResponseHandler} so the service gets notified when a filecache transfer
+ * succeeded or failed, independent of the callbacks the app is interested in. All calls are passed
+ * on to the app's handler, which may be null, as long as the listener considers the transfer
+ * current; calls for transfers which were paused and restarted are dropped.
+ */
+class TransferCompletionHandler implements InvocationHandler {
+
+    // Inner Classes -----------------------------------------------------
+
+    interface Listener {
+
+        /** @return false if calls for this transfer should be ignored */
+        boolean isCurrent();
+
+        void onTransferFinished(boolean success);
+    }
+
+    // Static Methods ----------------------------------------------------
+
+    static HttpResponseHandler wrap(HttpResponseHandler handler, Listener listener) {
+
+        return (HttpResponseHandler) Proxy.newProxyInstance(
+                HttpResponseHandler.class.getClassLoader(),
+                new Class<?>[] { HttpResponseHandler.class }, new TransferCompletionHandler(
+                        handler, listener));
+    }
+
+    // Instance Fields ---------------------------------------------------
+
+    private final HttpResponseHandler mDelegate;
+    private final Listener            mListener;
+
+    // Constructors ------------------------------------------------------
+
+    private TransferCompletionHandler(HttpResponseHandler delegate, Listener listener) {
+
+        mDelegate = delegate;
+        mListener = listener;
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+
+        if (!mListener.isCurrent()) {
+            return null;
+        }
+
+        try {
+            if (mDelegate != null) {
+                return method.invoke(mDelegate, args);
+            }
+            return null;
+
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+
+        } finally {
+            String name = method.getName();
+            if (name.startsWith("onSuccess")) {
+                mListener.onTransferFinished(true);
+            } else if (name.startsWith("onError")) {
+                mListener.onTransferFinished(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.telephony.TelephonyManager;
+
+/**
+ * How filecache transfers should behave on the current network. {@link FileCacheService} applies
+ * the parallelism and the deferral of large non-urgent stores; the chunk size is the buffer size
+ * of the library's own content streams (prefetched files and streamed payloads).
+ */
+public class TransferPolicy {
+
+    // Constants ---------------------------------------------------------
+
+    public static final TransferPolicy WIFI        =
+            new TransferPolicy("wifi", 64 * 1024, 4, Long.MAX_VALUE);
+
+    public static final TransferPolicy FAST_MOBILE =
+            new TransferPolicy("fast mobile", 16 * 1024, 2, 10 * 1024 * 1024);
+
+    public static final TransferPolicy SLOW_MOBILE =
+            new TransferPolicy("slow mobile", 4 * 1024, 1, 256 * 1024);
+
+    public static final TransferPolicy OFFLINE     =
+            new TransferPolicy("offline", 4 * 1024, 0, 0);
+
+    // Static Methods ----------------------------------------------------
+
+    /**
+     * @return the policy for the currently active network
+     */
+    public static TransferPolicy forContext(Context context) {
+
+        ConnectivityManager connectivity = (ConnectivityManager) context
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        return forNetwork(connectivity.getActiveNetworkInfo());
+    }
+
+    /**
+     * @param network
+     *            the active network, may be null
+     */
+    public static TransferPolicy forNetwork(NetworkInfo network) {
+
+        if (network == null || !network.isConnected()) {
+            return OFFLINE;
+        }
+
+        if (network.getType() != ConnectivityManager.TYPE_MOBILE) {
+            return WIFI;
+        }
+
+        switch (network.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+            case TelephonyManager.NETWORK_TYPE_UNKNOWN:
+                return SLOW_MOBILE;
+            default:
+                return network.isRoaming() ? SLOW_MOBILE : FAST_MOBILE;
+        }
+    }
+
+    // Instance Fields ---------------------------------------------------
+
+    private final String  mName;
+    private final int     mChunkSize;
+    private final int     mMaxParallelTransfers;
+    private final long    mDeferStoresAbove;
+
+    // Constructors ------------------------------------------------------
+
+    public TransferPolicy(String name, int chunkSize, int maxParallelTransfers,
+            long deferStoresAbove) {
+
+        mName = name;
+        mChunkSize = chunkSize;
+        mMaxParallelTransfers = maxParallelTransfers;
+        mDeferStoresAbove = deferStoresAbove;
+    }
+
+    // Public Instance Methods -------------------------------------------
+
+    /**
+     * @return buffer size for reading and writing transfer streams
+     */
+    public int getChunkSize() {
+
+        return mChunkSize;
+    }
+
+    /**
+     * @return how many transfers may run at the same time, 0 if none may run
+     */
+    public int getMaxParallelTransfers() {
+
+        return mMaxParallelTransfers;
+    }
+
+    /**
+     * @return whether a non-urgent store of the given size should wait for a better network
+     */
+    public boolean shouldDefer(long contentLength) {
+
+        return contentLength > mDeferStoresAbove || mMaxParallelTransfers == 0;
+    }
+
+    @Override
+    public String toString() {
+
+        return mName;
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The in-flight transfers of a {@link FileCacheService}. Each transfer runs through a small state
+ * machine: {@link #QUEUED} or {@link #RUNNING} when added, {@link #PAUSED} while waiting for a
+ * restart, and finally {@link #DONE} or {@link #FAILED}. Transitions are compare-and-set on the
+ * transfer's state, transfers with a URI are looked up in a {@link ConcurrentHashMap} whose
+ * segments stripe the locks, so queries from the UI thread never block on transfer threads.
+ * 
+ * Every transfer counts as active from {@link #add(Entry, int, boolean)} until it reaches a final
+ * state, including stores which do not know their URI yet. {@link #isIdle()} is therefore exact,
+ * and the {@link IdleListener} is called each time the last active transfer finishes.
+ */
+class TransferRegistry {
+
+    // Constants ---------------------------------------------------------
+
+    static final int         QUEUED  = 0;
+    static final int         RUNNING = 1;
+    static final int         PAUSED  = 2;
+    static final int         DONE    = 3;
+    static final int         FAILED  = 4;
+
+    private static final int STRIPES = 16;
+
+    // Inner Classes -----------------------------------------------------
+
+    interface IdleListener {
+
+        void onIdle();
+    }
+
+    /**
+     * A registered transfer. Subclasses carry whatever is needed to run it.
+     */
+    static class Entry {
+
+        private final AtomicInteger mState = new AtomicInteger(-1);
+        private volatile String     mUri;
+
+        Entry(String uri) {
+
+            mUri = uri;
+        }
+
+        /** @return the URI or null for stores which did not start yet */
+        String getUri() {
+
+            return mUri;
+        }
+
+        int getState() {
+
+            return mState.get();
+        }
+
+        boolean isFinished() {
+
+            int state = mState.get();
+            return state == DONE || state == FAILED;
+        }
+    }
+
+    // Instance Fields ---------------------------------------------------
+
+    private final ConcurrentHashMap<String, Entry> mByUri   = new ConcurrentHashMap<String, Entry>(
+                                                                    64, 0.75f, STRIPES);
+
+    private final AtomicInteger                    mActive  = new AtomicInteger();
+
+    private final AtomicInteger                    mRunning = new AtomicInteger();
+
+    private final IdleListener                     mIdleListener;
+
+    // Constructors ------------------------------------------------------
+
+    TransferRegistry(IdleListener idleListener) {
+
+        mIdleListener = idleListener;
+    }
+
+    // Package Instance Methods ------------------------------------------
+
+    /**
+     * Registers a new transfer in the given state, {@link #QUEUED} or {@link #RUNNING}.
+     * 
+     * @param replace
+     *            true to make this the transfer found by its URI even if another one of the same
+     *            URI is active; the other one keeps running but can't be looked up any more
+     * @return false if another active transfer of the same URI is registered and not replaced
+     */
+    boolean add(Entry entry, int state, boolean replace) {
+
+        if (state != QUEUED && state != RUNNING) {
+            throw new IllegalArgumentException("Transfers start queued or running");
+        }
+        if (!entry.mState.compareAndSet(-1, state)) {
+            throw new IllegalStateException("Transfer already registered");
+        }
+
+        mActive.incrementAndGet();
+        if (state == RUNNING) {
+            mRunning.incrementAndGet();
+        }
+        if (entry.mUri != null && replace) {
+            mByUri.put(entry.mUri, entry);
+        } else if (entry.mUri != null && !putUri(entry.mUri, entry)) {
+            transition(entry, state, FAILED);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes a store findable by the URI it got once it started. Does nothing if it already
+     * finished.
+     */
+    void bind(Entry entry, String uri) {
+
+        entry.mUri = uri;
+        if (!entry.isFinished()) {
+            putUri(uri, entry);
+            if (entry.isFinished()) {
+                // finished concurrently, before it was in the map
+                mByUri.remove(uri, entry);
+            }
+        }
+    }
+
+    /**
+     * Moves a transfer from one state to another if it is still in the expected state. Final
+     * states can't be left.
+     * 
+     * @return false if the transfer was not in the expected state
+     */
+    boolean transition(Entry entry, int from, int to) {
+
+        if (from == DONE || from == FAILED || !entry.mState.compareAndSet(from, to)) {
+            return false;
+        }
+
+        if (from == RUNNING) {
+            mRunning.decrementAndGet();
+        }
+        if (to == RUNNING) {
+            mRunning.incrementAndGet();
+        }
+        if (to == DONE || to == FAILED) {
+            String uri = entry.mUri;
+            if (uri != null) {
+                mByUri.remove(uri, entry);
+            }
+            if (mActive.decrementAndGet() == 0 && mIdleListener != null) {
+                mIdleListener.onIdle();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ends a transfer in whatever state it currently is.
+     * 
+     * @return false if it already was finished
+     */
+    boolean finish(Entry entry, int to) {
+
+        while (true) {
+            int state = entry.getState();
+            if (state == DONE || state == FAILED || state == -1) {
+                return false;
+            }
+            if (transition(entry, state, to)) {
+                return true;
+            }
+        }
+    }
+
+    /** @return the active transfer of the URI or null */
+    Entry get(String uri) {
+
+        return mByUri.get(uri);
+    }
+
+    boolean isActive(String uri) {
+
+        return mByUri.containsKey(uri);
+    }
+
+    boolean isIdle() {
+
+        return mActive.get() == 0;
+    }
+
+    int getActiveCount() {
+
+        return mActive.get();
+    }
+
+    int getRunningCount() {
+
+        return mRunning.get();
+    }
+
+    /**
+     * @return a weakly consistent view of the active transfers with a URI, for batch operations
+     */
+    Collection<Entry> getEntries() {
+
+        return mByUri.values();
+    }
+
+    // Private Instance Methods ------------------------------------------
+
+    private boolean putUri(String uri, Entry entry) {
+
+        while (true) {
+            Entry existing = mByUri.putIfAbsent(uri, entry);
+            if (existing == null || existing == entry) {
+                return true;
+            }
+            if (!existing.isFinished()) {
+                return false;
+            }
+            // a finished transfer about to be removed
+            if (mByUri.replace(uri, existing, entry)) {
+                return true;
+            }
+        }
+    }
+}
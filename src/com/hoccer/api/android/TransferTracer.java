@@ -0,0 +1,325 @@
+/**
+ * Copyright (C) 2010, Hoccer GmbH Berlin, Germany <www.hoccer.com> These coded instructions,
+ * statements, and computer programs contain proprietary information of Hoccer GmbH Berlin, and are
+ * copy protected by law. They may be used, modified and redistributed under the terms of GNU
+ * General Public License referenced below. Alternative licensing without the obligations of the GPL
+ * is available upon request. GPL v3 Licensing: This file is part of the "Linccer Android-API".
+ * Linccer Android-API is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version. Linccer Android-API is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License along with Linccer
+ * Android-API. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hoccer.api.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Records sampled spans of transfer operations (share, receive, environment submit, filecache
+ * transfers) with their timing and outcome. Sampled spans are forwarded through
+ * {@link AndroidLogHandler} and appended to a compact binary ring file that can be pulled from a
+ * device for latency analysis.
+ *
+ * The ring file starts with a 16 byte header (magic, version, record size, capacity, next record
+ * index) followed by fixed size records of {@link #RECORD_SIZE} bytes each: start time in wall
+ * clock millis (long), duration in micros (int), operation (byte), three reserved bytes, outcome
+ * (int) and four reserved bytes. All values are big endian.
+ *
+ * Tracing is disabled until {@link #engage(Context, int)} is called.
+ */
+public class TransferTracer {
+
+    // Constants ---------------------------------------------------------
+
+    private static final String LOG_TAG           = TransferTracer.class.getSimpleName();
+
+    public static final int     SHARE             = 1;
+    public static final int     RECEIVE           = 2;
+    public static final int     ENVIRONMENT       = 3;
+    public static final int     FILECACHE_FETCH   = 4;
+    public static final int     FILECACHE_STORE   = 5;
+
+    /** Outcomes of operations which do not report a {@link AsyncLinccer.MessageType} */
+    public static final int     OUTCOME_OK        = 0;
+    public static final int     OUTCOME_FAILED    = -1;
+    public static final int     OUTCOME_CANCELLED = -2;
+
+    public static final String  TRACE_FILE_NAME   = "transfer_trace.bin";
+
+    /** "HTRC" */
+    public static final int     MAGIC             = 0x48545243;
+    public static final int     VERSION           = 1;
+    public static final int     HEADER_SIZE       = 16;
+    public static final int     RECORD_SIZE       = 24;
+    public static final int     DEFAULT_CAPACITY  = 4096;
+
+    private static final String[] OPERATION_NAMES = { "none", "share", "receive", "environment",
+            "filecache_fetch", "filecache_store" };
+
+    // Static Fields -----------------------------------------------------
+
+    /** Trace every n-th span, 0 disables tracing */
+    private static volatile int              sSampleEvery;
+
+    private static final AtomicInteger       sSpanCounter = new AtomicInteger();
+
+    private static volatile RandomAccessFile sRingFile;
+
+    private static volatile File             sTraceFile;
+
+    private static volatile int              sCapacity;
+
+    /** Index of the next record to be written, only touched by the writer thread */
+    private static int                       sNextRecord;
+
+    /** Scratch buffers for one record and the header's next index, writer thread only */
+    private static final ByteBuffer          sRecordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+
+    private static final ByteBuffer          sIndexBuffer  = ByteBuffer.allocate(4);
+
+    private static final ExecutorService WRITER = Executors
+            .newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, LOG_TAG);
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    // Static Methods ----------------------------------------------------
+
+    /**
+     * Enables tracing into the app's files directory.
+     *
+     * @param sampleEvery
+     *            record every n-th span; 1 records all spans, 0 disables tracing
+     */
+    public static synchronized void engage(Context context, int sampleEvery) {
+
+        engage(new File(context.getFilesDir(), TRACE_FILE_NAME), DEFAULT_CAPACITY, sampleEvery);
+    }
+
+    public static synchronized void engage(final File traceFile, final int capacity,
+            int sampleEvery) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        sTraceFile = traceFile;
+        sCapacity = capacity;
+        WRITER.execute(new Runnable() {
+            public void run() {
+                openRingFile(traceFile, capacity);
+            }
+        });
+        setSampleRate(sampleEvery);
+    }
+
+    public static void setSampleRate(int sampleEvery) {
+
+        if (sampleEvery < 0) {
+            throw new IllegalArgumentException("Sample rate can't be negative");
+        }
+        sSampleEvery = sampleEvery;
+    }
+
+    public static int getSampleRate() {
+
+        return sSampleEvery;
+    }
+
+    /**
+     * @return the binary ring file spans are written to, or null if tracing was never engaged
+     */
+    public static File getTraceFile() {
+
+        return sTraceFile;
+    }
+
+    /**
+     * Starts a span for the given operation.
+     *
+     * @return the started span or null if this span is not sampled
+     */
+    public static Span begin(int operation) {
+
+        int sampleEvery = sSampleEvery;
+        if (sampleEvery == 0) {
+            return null;
+        }
+        if (sampleEvery > 1 && sSpanCounter.incrementAndGet() % sampleEvery != 0) {
+            return null;
+        }
+        return new Span(operation);
+    }
+
+    /**
+     * Ends a span returned by {@link #begin(int)}; does nothing if the span was not sampled.
+     */
+    public static void end(Span span, int outcome) {
+
+        if (span != null) {
+            span.end(outcome);
+        }
+    }
+
+    public static String getOperationName(int operation) {
+
+        if (operation < 0 || operation >= OPERATION_NAMES.length) {
+            return String.valueOf(operation);
+        }
+        return OPERATION_NAMES[operation];
+    }
+
+    // Private Static Methods --------------------------------------------
+
+    private static void record(final Span span, final long durationMicros, final int outcome) {
+
+        LogRecord record = new LogRecord(Level.FINE, getOperationName(span.mOperation) + " "
+                + outcome + " " + durationMicros + "us");
+        record.setLoggerName(LOG_TAG);
+        AndroidLogHandler.publishRecord(record);
+
+        if (sTraceFile == null) {
+            return;
+        }
+
+        WRITER.execute(new Runnable() {
+            public void run() {
+                writeRecord(span.mStartMillis, durationMicros, span.mOperation, outcome);
+            }
+        });
+    }
+
+    private static void openRingFile(File traceFile, int capacity) {
+
+        try {
+            if (sRingFile != null) {
+                sRingFile.close();
+                sRingFile = null;
+            }
+
+            RandomAccessFile file = new RandomAccessFile(traceFile, "rw");
+            if (file.length() >= HEADER_SIZE && file.readInt() == MAGIC
+                    && file.readShort() == VERSION && file.readShort() == RECORD_SIZE
+                    && file.readInt() == capacity) {
+
+                // continue an existing ring
+                sNextRecord = file.readInt() % capacity;
+
+            } else {
+
+                file.setLength(0);
+                file.writeInt(MAGIC);
+                file.writeShort(VERSION);
+                file.writeShort(RECORD_SIZE);
+                file.writeInt(capacity);
+                file.writeInt(0);
+                sNextRecord = 0;
+            }
+            sRingFile = file;
+
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "can't open trace file " + traceFile, e);
+        }
+    }
+
+    private static void writeRecord(long startMillis, long durationMicros, int operation,
+            int outcome) {
+
+        RandomAccessFile file = sRingFile;
+        if (file == null) {
+            return;
+        }
+
+        try {
+            ByteBuffer record = sRecordBuffer;
+            record.clear();
+            record.putLong(startMillis);
+            record.putInt((int) Math.min(durationMicros, Integer.MAX_VALUE));
+            record.put((byte) operation);
+            record.put((byte) 0);
+            record.putShort((short) 0);
+            record.putInt(outcome);
+            record.putInt(0);
+            record.flip();
+
+            // positional writes leave the file pointer alone, so no seeks are needed
+            FileChannel channel = file.getChannel();
+            writeFully(channel, record, HEADER_SIZE + (long) sNextRecord * RECORD_SIZE);
+
+            sNextRecord = (sNextRecord + 1) % sCapacity;
+            ByteBuffer index = sIndexBuffer;
+            index.clear();
+            index.putInt(sNextRecord);
+            index.flip();
+            writeFully(channel, index, HEADER_SIZE - 4);
+
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "can't write trace record", e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    // Inner Classes -----------------------------------------------------
+
+    /**
+     * A sampled, running operation. Spans are obtained from {@link TransferTracer#begin(int)};
+     * only the first call to {@link #end(int)} is recorded.
+     */
+    public static class Span {
+
+        private final int           mOperation;
+        private final long          mStartMillis;
+        private final long          mStartNanos;
+        private final AtomicBoolean mEnded = new AtomicBoolean();
+
+        private Span(int operation) {
+
+            mOperation = operation;
+            mStartMillis = System.currentTimeMillis();
+            mStartNanos = System.nanoTime();
+        }
+
+        /**
+         * Ends this span, further calls are ignored.
+         */
+        public void end(int outcome) {
+
+            if (!mEnded.compareAndSet(false, true)) {
+                return;
+            }
+            record(this, (System.nanoTime() - mStartNanos) / 1000, outcome);
+        }
+
+        public int getOperation() {
+
+            return mOperation;
+        }
+    }
+}